@@ -17,46 +17,68 @@
 
 package org.springframework.boot.context.embedded.netty;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Benchmarks for {@link HttpContentInputStream}.
+ * Benchmarks for {@link HttpContentInputStream}, handing content from a producer thread standing in for the event loop
+ * to a reading thread, across a range of chunk sizes.
  */
 @State(Scope.Group)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
 public class HttpContentInputStreamBenchmark {
+    private static final long READ_TIMEOUT_MILLIS = 100;
+
     private HttpContentInputStream stream;
     private byte[] b;
 
-    @Param("8192")
+    @Param({"512", "2048", "8192", "32768"})
     private int size;
 
+    @Param({"0", "100"})
+    private int readSpins;
+
     @Setup
     public void setup() {
-        stream = new HttpContentInputStream(new EmbeddedChannel());
+        stream = new HttpContentInputStream(new EmbeddedChannel(), MoreExecutors.directExecutor(),
+                HttpContentInputStream.DEFAULT_LOW_WATER_MARK,
+                HttpContentInputStream.DEFAULT_HIGH_WATER_MARK, READ_TIMEOUT_MILLIS, readSpins);
         b = new byte[size];
     }
 
     @Benchmark
     @Group("handler")
     public void addContent() {
-        stream.addContent(new DefaultHttpContent(Unpooled.buffer(size)));
+        if (stream.isOverHighWaterMark()) {
+            // Stands in for the handler suspending reads, so the queue doesn't grow without bound. Returns rather than
+            // waiting, so the producer can finish an iteration after the reader, which makes the read score the measure
+            Thread.yield();
+            return;
+        }
+        stream.addContent(new DefaultHttpContent(Unpooled.buffer(size).writerIndex(size)));
     }
 
     @Benchmark
     @Group("handler")
     public int read() throws IOException {
-        return stream.read(b);
+        try {
+            return stream.read(b);
+        } catch (SocketTimeoutException e) {
+            // The producer finished its iteration first
+            return 0;
+        }
     }
 
     public static void main(String[] args) throws RunnerException {
@@ -65,6 +87,7 @@ public class HttpContentInputStreamBenchmark {
                 .warmupIterations(5)
                 .measurementIterations(5)
                 .forks(0)
+                .addProfiler(GCProfiler.class)
                 .build();
 
         new Runner(opt).run();
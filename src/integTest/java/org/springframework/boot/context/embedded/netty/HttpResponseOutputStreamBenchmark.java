@@ -17,17 +17,20 @@
 
 package org.springframework.boot.context.embedded.netty;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import javax.servlet.ServletOutputStream;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
@@ -38,6 +41,9 @@ import java.util.concurrent.TimeUnit;
 @OutputTimeUnit(TimeUnit.NANOSECONDS)
 @BenchmarkMode(Mode.AverageTime)
 public class HttpResponseOutputStreamBenchmark {
+    private ChannelHandlerContext ctx;
+    private NettyEmbeddedContext context;
+    private ChannelWritabilityMonitor writabilityMonitor;
     private HttpResponseOutputStream stream;
     private byte[] input;
 
@@ -47,10 +53,11 @@ public class HttpResponseOutputStreamBenchmark {
     @Setup
     public void setup() {
         HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false);
-        ChannelHandlerContext ctx = new StubChannelHandlerContext();
-        NettyEmbeddedContext context = new NettyEmbeddedContext("/", Thread.currentThread().getContextClassLoader(), "Server");
-        NettyHttpServletResponse servletResponse = new NettyHttpServletResponse(ctx, context, httpResponse);
-        stream = new HttpResponseOutputStream(ctx, servletResponse);
+        ctx = new StubChannelHandlerContext();
+        context = new NettyEmbeddedContext("/", Thread.currentThread().getContextClassLoader(), "Server");
+        writabilityMonitor = new ChannelWritabilityMonitor(ctx.channel(), MoreExecutors.directExecutor());
+        NettyHttpServletResponse servletResponse = new NettyHttpServletResponse(ctx, context, httpResponse, writabilityMonitor);
+        stream = new HttpResponseOutputStream(ctx, servletResponse, writabilityMonitor);
         input = new byte[size];
     }
 
@@ -66,12 +73,22 @@ public class HttpResponseOutputStreamBenchmark {
         stream.write(input);
     }
 
+    @Benchmark
+    public void writeResponse() throws IOException {
+        HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false);
+        NettyHttpServletResponse servletResponse = new NettyHttpServletResponse(ctx, context, httpResponse, writabilityMonitor);
+        ServletOutputStream outputStream = servletResponse.getOutputStream();
+        outputStream.write(input);
+        outputStream.close();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(".*" + HttpResponseOutputStreamBenchmark.class.getSimpleName() + ".*")
                 .warmupIterations(5)
                 .measurementIterations(5)
                 .forks(1)
+                .addProfiler(GCProfiler.class)
                 .build();
 
         new Runner(opt).run();
@@ -17,8 +17,10 @@
 
 package org.springframework.boot.context.embedded.netty;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.handler.codec.http.*;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -40,7 +42,8 @@ public class NettyHttpServletResponseBenchmark {
         StubChannelHandlerContext cxt = new StubChannelHandlerContext();
         HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false);
         NettyEmbeddedContext context = new NettyEmbeddedContext("/", Thread.currentThread().getContextClassLoader(), "Server");
-        response = new NettyHttpServletResponse(cxt, context, httpResponse);
+        response = new NettyHttpServletResponse(cxt, context, httpResponse,
+                new ChannelWritabilityMonitor(cxt.channel(), MoreExecutors.directExecutor()));
     }
 
     @Benchmark
@@ -64,6 +67,7 @@ public class NettyHttpServletResponseBenchmark {
                 .warmupIterations(5)
                 .measurementIterations(5)
                 .forks(1)
+                .addProfiler(GCProfiler.class)
                 .build();
 
         new Runner(opt).run();
@@ -56,7 +56,7 @@ public class StubChannelHandlerContext implements ChannelHandlerContext {
 
     @Override
     public Channel channel() {
-        return null;
+        return channel;
     }
 
     @Override
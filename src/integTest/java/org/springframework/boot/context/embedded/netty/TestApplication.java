@@ -102,6 +102,14 @@ class TestApplication {
         return new ServletRegistrationBean(new NullHttpServlet(), "/null");
     }
 
+    @Bean
+    public ServletRegistrationBean nonBlockingNullServletRegistration() {
+        ServletRegistrationBean registration = new ServletRegistrationBean(new NullHttpServlet(), "/nullnonblocking");
+        registration.setName("nonBlockingNullHttpServlet");
+        registration.addInitParameter(NonBlockingServlet.INIT_PARAMETER, "true");
+        return registration;
+    }
+
     public static void main(String[] args) {
         SpringApplication.run(TestApplication.class, args);
     }
@@ -21,10 +21,7 @@ import javax.servlet.FilterConfig;
 import javax.servlet.Registration;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -39,6 +36,7 @@ class AbstractNettyRegistration implements Registration, Registration.Dynamic, S
     private final String name;
     private final String className;
     private final NettyEmbeddedContext context;
+    private final Map<String, String> initParameters = new HashMap<>();
     protected boolean asyncSupported;
 
     protected AbstractNettyRegistration(String name, String className, NettyEmbeddedContext context) {
@@ -66,7 +64,11 @@ class AbstractNettyRegistration implements Registration, Registration.Dynamic, S
     public boolean setInitParameter(String name, String value) {
         checkArgument(name != null, "name may not be null");
         checkArgument(value != null, "value may not be null");
-        return false;
+        if (initParameters.containsKey(name)) {
+            return false;
+        }
+        initParameters.put(name, value);
+        return true;
     }
 
     @Override
@@ -90,21 +92,27 @@ class AbstractNettyRegistration implements Registration, Registration.Dynamic, S
 
     @Override
     public String getInitParameter(String name) {
-        return null;
+        return initParameters.get(name);
     }
 
     @Override
     public Enumeration<String> getInitParameterNames() {
-        return Collections.emptyEnumeration();
+        return Collections.enumeration(initParameters.keySet());
     }
 
     @Override
     public Set<String> setInitParameters(Map<String, String> initParameters) {
-        return Collections.emptySet();
+        Set<String> conflicts = new HashSet<>();
+        for (Map.Entry<String, String> entry : initParameters.entrySet()) {
+            if (!setInitParameter(entry.getKey(), entry.getValue())) {
+                conflicts.add(entry.getKey());
+            }
+        }
+        return conflicts;
     }
 
     @Override
     public Map<String, String> getInitParameters() {
-        return Collections.emptyMap();
+        return Collections.unmodifiableMap(initParameters);
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Abstract {@link ServletExecutionStrategy} for strategies that execute requests on a shared
+ * {@link ExecutorService}.
+ *
+ * @author Danny Thomas
+ */
+public abstract class AbstractServletExecutionStrategy implements ServletExecutionStrategy {
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private ExecutorService executorService;
+
+    @Override
+    public void start(EventLoopGroup workerGroup) {
+        checkState(null == executorService, "Strategy has already been started");
+        executorService = newExecutorService(new DefaultThreadFactory("servlet-executor"));
+    }
+
+    /**
+     * Create the {@link ExecutorService} requests will be executed on.
+     */
+    protected abstract ExecutorService newExecutorService(ThreadFactory threadFactory);
+
+    @Override
+    public Executor executor(Channel channel) {
+        checkState(null != executorService, "Strategy has not been started");
+        return new SerialExecutor(executorService);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (null != executorService) {
+            executorService.shutdown();
+            executorService.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            executorService = null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server channel {@link io.netty.channel.ChannelInboundHandler} that counts the connections accepted by each server
+ * channel, used to report how evenly accepts are spread when binding multiple acceptors with
+ * <code>SO_REUSEPORT</code>.
+ *
+ * @author Danny Thomas
+ */
+@ChannelHandler.Sharable
+class AcceptCountingHandler extends ChannelInboundHandlerAdapter {
+    private final ConcurrentMap<Channel, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        count(ctx.channel());
+        ctx.fireChannelRegistered();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        count(ctx.channel()).incrementAndGet();
+        ctx.fireChannelRead(msg);
+    }
+
+    private AtomicLong count(Channel channel) {
+        AtomicLong count = counts.get(channel);
+        if (null == count) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent(channel, newCount);
+            if (null == count) {
+                count = newCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of connections accepted by each server channel.
+     */
+    List<Long> getAcceptCounts() {
+        List<Long> acceptCounts = new ArrayList<>(counts.size());
+        for (AtomicLong count : counts.values()) {
+            acceptCounts.add(count.get());
+        }
+        return acceptCounts;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A concurrency limit that adapts to observed request latency, using TCP Vegas style limit estimation.
+ * <p>
+ * The lowest latency seen approximates the latency with no queueing. Each completed request estimates the number of
+ * requests queued as <code>limit * (1 - minRtt / rtt)</code>. The limit grows when that estimate is small, and
+ * shrinks when it's large, by the log of the current limit. The minimum is periodically reset to the latest sample,
+ * so the limit follows changes in the latency of the application.
+ * <p>
+ * Every request completion records its latency without blocking. The limit is recomputed by whichever completing
+ * request finds no other recomputation in progress, and the others skip it, so servlet threads don't queue on a lock.
+ * <p>
+ * Requests over the limit are rejected with a <code>503</code> by the {@link AdmissionControlHandler}.
+ *
+ * @author Danny Thomas
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final int DEFAULT_INITIAL_LIMIT = 20;
+    private static final int DEFAULT_MIN_LIMIT = 1;
+    private static final int DEFAULT_MAX_LIMIT = 1000;
+    private static final int PROBE_INTERVAL = 1000;
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong minRttNanos = new AtomicLong();
+    private final AtomicLong smoothedRttNanos = new AtomicLong();
+    private final ReentrantLock limitLock = new ReentrantLock();
+    private volatile int limit;
+
+    public AdaptiveConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be greater than zero");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be at least minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Acquire a permit, if the number of in-flight requests is under the limit.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit regardless of the limit.
+     */
+    void acquire() {
+        inFlight.incrementAndGet();
+    }
+
+    void recordRejection() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Release a permit, sampling the latency of the request.
+     *
+     * @param startNanos the {@link System#nanoTime()} the permit was acquired
+     */
+    void release(long startNanos) {
+        int inFlightAtRelease = inFlight.getAndDecrement();
+        long rttNanos = System.nanoTime() - startNanos;
+        if (rttNanos > 0) {
+            sample(rttNanos, inFlightAtRelease);
+        }
+    }
+
+    private void sample(long rttNanos, int inFlightAtRelease) {
+        long minRtt = updateMinRtt(rttNanos);
+        updateSmoothedRtt(rttNanos);
+        if (!limitLock.tryLock()) {
+            return;
+        }
+        try {
+            updateLimit(rttNanos, minRtt, inFlightAtRelease);
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    private long updateMinRtt(long rttNanos) {
+        boolean probe = samples.incrementAndGet() % PROBE_INTERVAL == 0;
+        while (true) {
+            long current = minRttNanos.get();
+            if (!probe && 0 != current && current <= rttNanos) {
+                return current;
+            }
+            if (minRttNanos.compareAndSet(current, rttNanos)) {
+                return rttNanos;
+            }
+        }
+    }
+
+    private void updateSmoothedRtt(long rttNanos) {
+        while (true) {
+            long current = smoothedRttNanos.get();
+            long smoothed = 0 == current ? rttNanos : (long) (current * (1 - SMOOTHING_FACTOR) + rttNanos * SMOOTHING_FACTOR);
+            if (smoothedRttNanos.compareAndSet(current, smoothed)) {
+                return;
+            }
+        }
+    }
+
+    private void updateLimit(long rttNanos, long minRttNanos, int inFlightAtRelease) {
+        int currentLimit = limit;
+        double queueSize = currentLimit * (1 - (double) minRttNanos / rttNanos);
+        double step = Math.max(1, Math.log10(currentLimit));
+        double newLimit;
+        if (queueSize <= 3 * step) {
+            if (inFlightAtRelease * 2 < currentLimit) {
+                // The application isn't using the limit, so there's nothing to learn from growing it
+                return;
+            }
+            newLimit = currentLimit + step;
+        } else if (queueSize >= 6 * step) {
+            newLimit = currentLimit - step;
+        } else {
+            return;
+        }
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(newLimit)));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the lowest recent request latency, the estimate of latency with no queueing.
+     */
+    public long getMinRttNanos() {
+        return minRttNanos.get();
+    }
+
+    /**
+     * Get the exponentially smoothed request latency.
+     */
+    public long getSmoothedRttNanos() {
+        return smoothedRttNanos.get();
+    }
+
+    /**
+     * Get the number of requests rejected for being over the limit.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.base.Charsets;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.*;
+import io.netty.util.AsciiString;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link ChannelInboundHandler} that sheds load by rejecting requests on the event loop when too many requests are
+ * in-flight, rather than letting them queue for the servlet executor until clients time out.
+ * <p>
+ * Requests are limited by a static maximum number of in-flight requests, an {@link AdaptiveConcurrencyLimiter}, or
+ * both.
+ * <p>
+ * Rejected requests are answered with a <code>503 Service Unavailable</code> built from pre-encoded headers and a
+ * shared body. Requests are only rejected when no earlier request for the channel is still being serviced or has a
+ * response outstanding, so pipelined responses stay in order. Requests with a body have their connection closed,
+ * because the unread body would otherwise be read by the next request.
+ *
+ * @author Danny Thomas
+ */
+@ChannelHandler.Sharable
+class AdmissionControlHandler extends ChannelInboundHandlerAdapter {
+    private static final ByteBuf REJECTED_CONTENT = Unpooled.unreleasableBuffer(
+            Unpooled.directBuffer().writeBytes("Service Unavailable".getBytes(Charsets.US_ASCII)));
+    private static final AsciiString REJECTED_CONTENT_LENGTH = new AsciiString(String.valueOf(REJECTED_CONTENT.readableBytes()));
+    private static final AsciiString REJECTED_CONTENT_TYPE = new AsciiString("text/plain; charset=US-ASCII");
+
+    private final NettyEmbeddedContext servletContext;
+    private final int maxInFlightRequests;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * @param maxInFlightRequests the number of in-flight requests before requests are rejected, or 0 for no limit
+     * @param concurrencyLimiter  the adaptive limiter, or null for none
+     */
+    AdmissionControlHandler(NettyEmbeddedContext servletContext, int maxInFlightRequests, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        checkArgument(maxInFlightRequests >= 0, "maxInFlightRequests must not be negative");
+        checkArgument(maxInFlightRequests > 0 || null != concurrencyLimiter, "a limit is required");
+        this.servletContext = checkNotNull(servletContext);
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof NettyHttpServletRequest) {
+            NettyHttpServletRequest request = (NettyHttpServletRequest) msg;
+            // The tracker includes this request
+            if (maxInFlightRequests > 0 && servletContext.getRequestTracker().getInFlight() > maxInFlightRequests
+                    && isChannelIdle(ctx, request)) {
+                reject(ctx, request);
+                return;
+            }
+            if (null != concurrencyLimiter && !acquire(ctx, request)) {
+                concurrencyLimiter.recordRejection();
+                reject(ctx, request);
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private boolean acquire(ChannelHandlerContext ctx, NettyHttpServletRequest request) {
+        long startNanos = System.nanoTime();
+        if (!concurrencyLimiter.tryAcquire()) {
+            if (isChannelIdle(ctx, request)) {
+                return false;
+            }
+            // Pipelined behind a request that's still in progress, so can't be rejected without reordering responses
+            concurrencyLimiter.acquire();
+        }
+        ((NettyHttpServletResponse) request.getServletResponse()).setConcurrencyLimiter(concurrencyLimiter, startNanos);
+        return true;
+    }
+
+    private boolean isChannelIdle(ChannelHandlerContext ctx, NettyHttpServletRequest request) {
+        // An async request's response is outstanding after its servlet has returned and the executor is idle
+        if (RequestDispatcherHandler.hasOutstandingResponses(ctx.channel())) {
+            return false;
+        }
+        Executor servletExecutor = request.getServletExecutor();
+        return !(servletExecutor instanceof SerialExecutor) || ((SerialExecutor) servletExecutor).isIdle();
+    }
+
+    private void reject(ChannelHandlerContext ctx, NettyHttpServletRequest request) {
+        rejectedRequests.incrementAndGet();
+        HttpRequest nettyRequest = request.getNettyRequest();
+        boolean hasContent = HttpHeaders.getContentLength(nettyRequest, 0) > 0 || HttpHeaders.isTransferEncodingChunked(nettyRequest);
+        boolean keepAlive = !hasContent && HttpHeaders.isKeepAlive(nettyRequest);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE,
+                REJECTED_CONTENT.duplicate());
+        HttpHeaders headers = response.headers();
+        headers.set(HttpHeaders.Names.CONTENT_LENGTH, REJECTED_CONTENT_LENGTH);
+        headers.set(HttpHeaders.Names.CONTENT_TYPE, REJECTED_CONTENT_TYPE);
+        headers.set(HttpHeaders.Names.SERVER, servletContext.getServerInfoAscii());
+        HttpHeaders.setKeepAlive(response, keepAlive);
+        ChannelFuture future = ctx.writeAndFlush(response);
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        ((NettyHttpServletResponse) request.getServletResponse()).abort();
+    }
+
+    /**
+     * Get the number of requests rejected since the container started.
+     */
+    long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+}
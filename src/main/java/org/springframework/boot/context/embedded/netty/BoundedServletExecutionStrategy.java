@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.concurrent.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link ServletExecutionStrategy} that executes requests on a fixed size pool of threads, with a limit on the
+ * number of queued requests. Requests received when the queue is full are rejected with a
+ * <code>503 Service Unavailable</code>.
+ *
+ * @author Danny Thomas
+ */
+public class BoundedServletExecutionStrategy extends AbstractServletExecutionStrategy {
+    private final int threads;
+    private final int queueLimit;
+
+    /**
+     * Create a strategy with an effectively unbounded queue.
+     */
+    public BoundedServletExecutionStrategy(int threads) {
+        this(threads, Integer.MAX_VALUE);
+    }
+
+    public BoundedServletExecutionStrategy(int threads, int queueLimit) {
+        checkArgument(threads > 0, "threads must be greater than zero");
+        checkArgument(queueLimit > 0, "queueLimit must be greater than zero");
+        this.threads = threads;
+        this.queueLimit = queueLimit;
+    }
+
+    @Override
+    protected ExecutorService newExecutorService(ThreadFactory threadFactory) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueLimit), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+}
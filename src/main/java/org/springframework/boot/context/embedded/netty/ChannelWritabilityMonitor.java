@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tracks the writability of a channel for the {@link HttpResponseOutputStream}s of its responses, so that a slow
+ * client bounds the response data held in the channel's outbound buffer to the write buffer high water mark.
+ * <p>
+ * Blocking writers are parked until the channel is writable again, and a {@link WriteListener} that saw
+ * {@link javax.servlet.ServletOutputStream#isReady()} return false is notified on the servlet executor.
+ *
+ * @author Danny Thomas
+ */
+class ChannelWritabilityMonitor {
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Channel channel;
+    private final Executor servletExecutor;
+    // Blocking writers park rather than wait on a monitor, so a virtual thread doesn't pin its carrier
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<WriteListener> pendingListener = new AtomicReference<>();
+
+    ChannelWritabilityMonitor(Channel channel, Executor servletExecutor) {
+        this.channel = checkNotNull(channel);
+        this.servletExecutor = checkNotNull(servletExecutor);
+    }
+
+    /**
+     * Park the calling thread until the channel is writable, flushing what has been written so it can drain.
+     */
+    void awaitWritable() throws IOException {
+        if (channel.isWritable() || channel.eventLoop().inEventLoop()) {
+            // Parking the event loop would stop the outbound buffer draining
+            return;
+        }
+        channel.flush();
+        Thread thread = Thread.currentThread();
+        waiters.add(thread);
+        try {
+            // Checked again after the waiter is registered, as writability may have changed before it was visible
+            while (!channel.isWritable()) {
+                if (!channel.isActive()) {
+                    throw new ClosedChannelException();
+                }
+                // Timed, so the writer still notices the channel closing
+                LockSupport.parkNanos(this, POLL_INTERVAL_NANOS);
+                if (thread.isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for the channel to become writable");
+                }
+            }
+        } finally {
+            waiters.remove(thread);
+        }
+    }
+
+    /**
+     * Check if the channel is writable, registering the listener to be notified when it becomes writable if not.
+     */
+    boolean isWritable(WriteListener listener) {
+        if (channel.isWritable()) {
+            return true;
+        }
+        channel.flush();
+        pendingListener.set(listener);
+        // Writability may have changed before the listener was registered
+        if (channel.isWritable()) {
+            notifyPendingListener();
+        }
+        return false;
+    }
+
+    /**
+     * Notify the listener that a write is possible, on the servlet executor.
+     */
+    void notifyWritePossible(final WriteListener listener) {
+        servletExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.onWritePossible();
+                } catch (Throwable t) {
+                    listener.onError(t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the event loop when the writability of the channel changes.
+     */
+    void writabilityChanged() {
+        if (channel.isWritable()) {
+            wakeWaiters();
+            notifyPendingListener();
+        }
+    }
+
+    /**
+     * Called on the event loop when the channel becomes inactive.
+     */
+    void channelInactive() {
+        wakeWaiters();
+        WriteListener listener = pendingListener.getAndSet(null);
+        if (null != listener) {
+            final WriteListener closedListener = listener;
+            servletExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closedListener.onError(new ClosedChannelException());
+                }
+            });
+        }
+    }
+
+    private void wakeWaiters() {
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private void notifyPendingListener() {
+        WriteListener listener = pendingListener.getAndSet(null);
+        if (null != listener) {
+            notifyWritePossible(listener);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Response compression configuration, with the same properties as the <code>server.compression</code> properties of
+ * later Spring Boot releases. Bound to <code>netty.compression</code> by the auto-configuration.
+ *
+ * @author Danny Thomas
+ * @see ResponseCompressionHandler
+ */
+public class Compression {
+    private boolean enabled;
+    private String[] mimeTypes = new String[]{"text/html", "text/xml", "text/plain", "text/css",
+            "text/javascript", "application/javascript", "application/json", "application/xml"};
+    private int minResponseSize = 2048;
+
+    /**
+     * Is response compression enabled. Defaults to false.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the media types of responses that are compressed.
+     */
+    public String[] getMimeTypes() {
+        return mimeTypes;
+    }
+
+    public void setMimeTypes(String[] mimeTypes) {
+        this.mimeTypes = Arrays.copyOf(checkNotNull(mimeTypes), mimeTypes.length);
+    }
+
+    /**
+     * Get the size of the smallest response that's compressed, in bytes. Defaults to 2048.
+     */
+    public int getMinResponseSize() {
+        return minResponseSize;
+    }
+
+    public void setMinResponseSize(int minResponseSize) {
+        checkArgument(minResponseSize >= 0, "minResponseSize must not be negative");
+        this.minResponseSize = minResponseSize;
+    }
+}
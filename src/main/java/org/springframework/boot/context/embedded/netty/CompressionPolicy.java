@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides which content is compressed, from the media types and minimum size of a {@link Compression} configuration.
+ * Shared by response compression and the variants held by the {@link StaticResourceCache}, so both honour the same
+ * settings.
+ *
+ * @author Danny Thomas
+ */
+final class CompressionPolicy {
+    private final Set<String> mimeTypes;
+    private final long minSize;
+
+    /**
+     * @param mimeTypes the lower case media types of content to compress
+     * @param minSize   the size of the smallest content to compress
+     */
+    CompressionPolicy(Set<String> mimeTypes, long minSize) {
+        this.mimeTypes = ImmutableSet.copyOf(mimeTypes);
+        this.minSize = minSize;
+    }
+
+    /**
+     * Get the policy for a compression configuration, or null if compression isn't enabled.
+     */
+    static CompressionPolicy of(Compression compression) {
+        if (null == compression || !compression.isEnabled()) {
+            return null;
+        }
+        ImmutableSet.Builder<String> mimeTypes = ImmutableSet.builder();
+        for (String mimeType : compression.getMimeTypes()) {
+            mimeTypes.add(mimeType.toLowerCase(Locale.ENGLISH));
+        }
+        return new CompressionPolicy(mimeTypes.build(), compression.getMinResponseSize());
+    }
+
+    /**
+     * Is content of a type, and length if known, compressed.
+     *
+     * @param contentType a media type, or <code>Content-Type</code> value, or null if the type isn't known
+     * @param length      the length of the content, or -1 if it isn't known
+     */
+    boolean isCompressible(String contentType, long length) {
+        if (null == contentType || (length >= 0 && length < minSize)) {
+            return false;
+        }
+        int index = contentType.indexOf(';');
+        String mimeType = (index < 0 ? contentType : contentType.substring(0, index)).trim().toLowerCase(Locale.ENGLISH);
+        return mimeTypes.contains(mimeType);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses content with a {@link Deflater}, framed as gzip or zlib for the deflate content coding. Shared by the
+ * response compression handler and the static resource cache, so there's one implementation of the framing.
+ * <p>
+ * Content in a direct buffer is copied to the deflater through a scratch array owned by the compressor, a piece at a
+ * time, so compressing it doesn't allocate an array the size of the content.
+ *
+ * @author Danny Thomas
+ */
+final class Compressor {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final Deflater deflater;
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private byte[] scratch;
+    private boolean headerWritten;
+
+    /**
+     * @param gzip  true for gzip framing, false for zlib
+     * @param level the {@link Deflater} compression level
+     */
+    Compressor(boolean gzip, int level) {
+        this.gzip = gzip;
+        // gzip has its own framing, so has the deflater write raw deflate data
+        deflater = new Deflater(level, gzip);
+    }
+
+    /**
+     * Compress the readable bytes of content, flushing the compressed data so it can be sent, or finishing the stream
+     * if it's the last content.
+     */
+    ByteBuf compress(ByteBufAllocator alloc, ByteBuf content, boolean last) {
+        int length = content.readableBytes();
+        ByteBuf out = alloc.heapBuffer(length / 2 + 64);
+        if (gzip && !headerWritten) {
+            out.writeBytes(GZIP_HEADER);
+            headerWritten = true;
+        }
+        if (content.hasArray()) {
+            deflate(out, content.array(), content.arrayOffset() + content.readerIndex(), length);
+            content.skipBytes(length);
+        } else {
+            if (null == scratch && length > 0) {
+                scratch = new byte[SCRATCH_SIZE];
+            }
+            while (content.isReadable()) {
+                int n = Math.min(content.readableBytes(), scratch.length);
+                content.readBytes(scratch, 0, n);
+                deflate(out, scratch, 0, n);
+            }
+        }
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(out, Deflater.NO_FLUSH);
+            }
+            if (gzip) {
+                // Little endian CRC and length modulo 2^32
+                out.writeInt(Integer.reverseBytes((int) crc.getValue()));
+                out.writeInt(Integer.reverseBytes((int) deflater.getBytesRead()));
+            }
+        } else {
+            // Flushed until the deflater leaves space in the output, so it's holding nothing back
+            while (deflate(out, Deflater.SYNC_FLUSH)) {
+                // Keep flushing
+            }
+        }
+        return out;
+    }
+
+    private void deflate(ByteBuf out, byte[] input, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (gzip) {
+            crc.update(input, offset, length);
+        }
+        // The deflater takes all of the input before it returns, so the scratch array can be reused
+        deflater.setInput(input, offset, length);
+        while (!deflater.needsInput()) {
+            deflate(out, Deflater.NO_FLUSH);
+        }
+    }
+
+    /**
+     * @return true if the deflater filled the output, and may have more to write
+     */
+    private boolean deflate(ByteBuf out, int flush) {
+        out.ensureWritable(64);
+        int writable = out.writableBytes();
+        int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), writable, flush);
+        out.writerIndex(out.writerIndex() + written);
+        return written == writable;
+    }
+
+    /**
+     * Reset the compressor to start a new stream.
+     */
+    void reset() {
+        deflater.reset();
+        crc.reset();
+        headerWritten = false;
+    }
+
+    /**
+     * Free the deflater's native memory. The compressor can't be used afterwards.
+     */
+    void end() {
+        deflater.end();
+    }
+}
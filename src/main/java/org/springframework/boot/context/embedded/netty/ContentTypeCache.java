@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.base.Optional;
+import com.google.common.net.MediaType;
+import io.netty.util.AsciiString;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of parsed <code>Content-Type</code> values, and of the pre-encoded header values for media type and charset
+ * combinations, so setting the content type of a response neither parses nor allocates for the handful of content
+ * types an application uses.
+ * <p>
+ * The caches stop growing at a fixed size, so content types built from request input can't exhaust the heap.
+ *
+ * @author Danny Thomas
+ */
+class ContentTypeCache {
+    private static final int MAX_ENTRIES = 256;
+    private static final String NO_CHARSET = "";
+
+    private final ConcurrentMap<String, ContentType> contentTypes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, AsciiString>> headerValues = new ConcurrentHashMap<>();
+
+    /**
+     * Get the parsed form of a <code>Content-Type</code> value.
+     *
+     * @throws IllegalArgumentException if the value can't be parsed
+     */
+    ContentType get(String type) {
+        ContentType contentType = contentTypes.get(type);
+        if (null == contentType) {
+            MediaType mediaType = MediaType.parse(type);
+            Optional<Charset> charset = mediaType.charset();
+            contentType = new ContentType(mediaType.type() + '/' + mediaType.subtype(), charset.isPresent() ? charset.get().name() : null);
+            if (contentTypes.size() < MAX_ENTRIES) {
+                ContentType existing = contentTypes.putIfAbsent(type, contentType);
+                if (null != existing) {
+                    contentType = existing;
+                }
+            }
+        }
+        return contentType;
+    }
+
+    /**
+     * Get the encoded header value for a media type, and charset if any.
+     */
+    AsciiString getHeaderValue(String mediaType, String charset) {
+        ConcurrentMap<String, AsciiString> values = headerValues.get(mediaType);
+        if (null == values) {
+            if (headerValues.size() >= MAX_ENTRIES) {
+                return newHeaderValue(mediaType, charset);
+            }
+            values = new ConcurrentHashMap<>();
+            ConcurrentMap<String, AsciiString> existing = headerValues.putIfAbsent(mediaType, values);
+            if (null != existing) {
+                values = existing;
+            }
+        }
+        String charsetKey = null == charset ? NO_CHARSET : charset;
+        AsciiString value = values.get(charsetKey);
+        if (null == value) {
+            value = newHeaderValue(mediaType, charset);
+            if (values.size() < MAX_ENTRIES) {
+                values.putIfAbsent(charsetKey, value);
+            }
+        }
+        return value;
+    }
+
+    private static AsciiString newHeaderValue(String mediaType, String charset) {
+        return new AsciiString(null == charset ? mediaType : mediaType + "; charset=" + charset);
+    }
+
+    /**
+     * A parsed <code>Content-Type</code>, with any parameters other than the charset dropped.
+     */
+    static final class ContentType {
+        private final String mediaType;
+        private final String charset;
+
+        ContentType(String mediaType, String charset) {
+            this.mediaType = mediaType;
+            this.charset = charset;
+        }
+
+        /**
+         * Get the type and subtype.
+         */
+        String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Get the canonical name of the charset, or null if there isn't one.
+         */
+        String getCharset() {
+            return charset;
+        }
+    }
+}
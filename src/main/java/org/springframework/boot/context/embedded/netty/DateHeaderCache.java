@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of the current <code>Date</code> response header value, refreshed once a second by a task scheduled on an
+ * event loop, so responses set the header without formatting or allocating.
+ *
+ * @author Danny Thomas
+ */
+class DateHeaderCache {
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    // Only used by the refresh task, and on construction
+    private final DateFormat format;
+    private volatile AsciiString value;
+    private ScheduledFuture<?> refreshFuture;
+
+    DateHeaderCache() {
+        format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        refresh();
+    }
+
+    /**
+     * Get the pre-encoded header value for the current second.
+     */
+    AsciiString get() {
+        return value;
+    }
+
+    private void refresh() {
+        value = new AsciiString(format.format(new Date()));
+    }
+
+    /**
+     * Start refreshing the value, aligned to the start of each second.
+     */
+    synchronized void start(EventExecutorGroup group) {
+        if (null != refreshFuture) {
+            return;
+        }
+        refresh();
+        long initialDelay = REFRESH_INTERVAL_MILLIS - System.currentTimeMillis() % REFRESH_INTERVAL_MILLIS;
+        refreshFuture = group.next().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, initialDelay, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (null != refreshFuture) {
+            refreshFuture.cancel(false);
+            refreshFuture = null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.concurrent.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link ServletExecutionStrategy} that executes requests on a pool that grows from a core size to a maximum size
+ * when requests queue because all threads are busy, and shrinks back to the core size once threads have been idle for
+ * the keep alive time.
+ * <p>
+ * A plain {@link ThreadPoolExecutor} only adds threads once its queue is full, so the queue here refuses offers while
+ * the pool can still grow, and requests are only queued once the maximum size is reached.
+ *
+ * @author Danny Thomas
+ */
+public class ElasticServletExecutionStrategy extends AbstractServletExecutionStrategy {
+    private static final long DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+    private final int coreThreads;
+    private final int maxThreads;
+    private final int queueLimit;
+    private final long keepAliveMillis;
+
+    public ElasticServletExecutionStrategy(int coreThreads, int maxThreads) {
+        this(coreThreads, maxThreads, Integer.MAX_VALUE, DEFAULT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public ElasticServletExecutionStrategy(int coreThreads, int maxThreads, int queueLimit, long keepAlive, TimeUnit unit) {
+        checkArgument(coreThreads >= 0, "coreThreads must not be negative");
+        checkArgument(maxThreads > 0 && maxThreads >= coreThreads, "maxThreads must be greater than zero, and at least coreThreads");
+        checkArgument(queueLimit > 0, "queueLimit must be greater than zero");
+        checkArgument(keepAlive >= 0, "keepAlive must not be negative");
+        this.coreThreads = coreThreads;
+        this.maxThreads = maxThreads;
+        this.queueLimit = queueLimit;
+        this.keepAliveMillis = unit.toMillis(keepAlive);
+    }
+
+    @Override
+    protected ExecutorService newExecutorService(ThreadFactory threadFactory) {
+        final ElasticQueue queue = new ElasticQueue(queueLimit);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreads, maxThreads, keepAliveMillis, TimeUnit.MILLISECONDS,
+                queue, threadFactory, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                // The pool is at its maximum size, queue the task if there's room left
+                if (executor.isShutdown() || !queue.force(r)) {
+                    throw new RejectedExecutionException("Servlet executor queue is full");
+                }
+            }
+        });
+        queue.executor = executor;
+        return executor;
+    }
+
+    public int getCoreThreads() {
+        return coreThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    private static class ElasticQueue extends LinkedBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        private volatile ThreadPoolExecutor executor;
+
+        ElasticQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            ThreadPoolExecutor executor = this.executor;
+            if (null != executor) {
+                int poolSize = executor.getPoolSize();
+                if (poolSize < executor.getMaximumPoolSize() && executor.getActiveCount() >= poolSize) {
+                    // All threads are busy, refuse the offer so the executor starts a new thread
+                    return false;
+                }
+            }
+            return super.offer(runnable);
+        }
+
+        boolean force(Runnable runnable) {
+            return super.offer(runnable);
+        }
+    }
+}
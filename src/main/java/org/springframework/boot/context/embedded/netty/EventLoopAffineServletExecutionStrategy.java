@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A {@link ServletExecutionStrategy} that pairs each worker {@link EventLoop} with its own small pool of servlet
+ * threads.
+ * <p>
+ * Requests read by an event loop, and their async dispatches, are only ever executed by the threads paired with that
+ * event loop, so request state stays in the caches of a small set of threads and queues are never shared between
+ * event loops. Since connections are spread across event loops, load is spread evenly across the pools.
+ *
+ * @author Danny Thomas
+ */
+public class EventLoopAffineServletExecutionStrategy implements ServletExecutionStrategy {
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private final int threadsPerEventLoop;
+    private final int queueLimit;
+    private final AtomicInteger poolIndex = new AtomicInteger();
+    private ConcurrentMap<EventLoop, ExecutorService> executors;
+
+    public EventLoopAffineServletExecutionStrategy(int threadsPerEventLoop) {
+        this(threadsPerEventLoop, Integer.MAX_VALUE);
+    }
+
+    public EventLoopAffineServletExecutionStrategy(int threadsPerEventLoop, int queueLimit) {
+        checkArgument(threadsPerEventLoop > 0, "threadsPerEventLoop must be greater than zero");
+        checkArgument(queueLimit > 0, "queueLimit must be greater than zero");
+        this.threadsPerEventLoop = threadsPerEventLoop;
+        this.queueLimit = queueLimit;
+    }
+
+    @Override
+    public void start(EventLoopGroup workerGroup) {
+        checkState(null == executors, "Strategy has already been started");
+        executors = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public Executor executor(Channel channel) {
+        checkState(null != executors, "Strategy has not been started");
+        return new SerialExecutor(executorFor(channel.eventLoop()));
+    }
+
+    private ExecutorService executorFor(EventLoop eventLoop) {
+        ExecutorService executor = executors.get(eventLoop);
+        if (null == executor) {
+            ThreadFactory threadFactory = new DefaultThreadFactory("servlet-executor-" + poolIndex.getAndIncrement());
+            ExecutorService newExecutor = new ThreadPoolExecutor(threadsPerEventLoop, threadsPerEventLoop, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(queueLimit), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            executor = executors.putIfAbsent(eventLoop, newExecutor);
+            if (null == executor) {
+                executor = newExecutor;
+            } else {
+                newExecutor.shutdown();
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (null != executors) {
+            for (ExecutorService executor : executors.values()) {
+                executor.shutdown();
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STOP_TIMEOUT_SECONDS);
+            for (ExecutorService executor : executors.values()) {
+                executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            executors = null;
+        }
+    }
+
+    public int getThreadsPerEventLoop() {
+        return threadsPerEventLoop;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * A {@link io.netty.channel.ChannelOutboundHandler} that merges flushes, so a channel with several responses completing
+ * close together, either pipelined or from the servlet executor, writes them with one syscall.
+ * <p>
+ * Flushes during a read are deferred until the read completes. Other flushes, which are issued by servlet threads and
+ * arrive as tasks on the event loop, are deferred to a single flush task executed after the tasks already queued on
+ * the event loop. The number of deferred flushes is bounded, so a busy event loop doesn't add unbounded latency.
+ *
+ * @author Danny Thomas
+ */
+class FlushConsolidationHandler extends ChannelDuplexHandler {
+    private static final int DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
+
+    private final int explicitFlushAfterFlushes;
+    private int flushPendingCount;
+    private boolean readInProgress;
+    private boolean flushScheduled;
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            if (flushPendingCount > 0 && !readInProgress) {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    FlushConsolidationHandler() {
+        this(DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES);
+    }
+
+    /**
+     * @param explicitFlushAfterFlushes the number of deferred flushes after which the channel is flushed regardless
+     */
+    FlushConsolidationHandler(int explicitFlushAfterFlushes) {
+        this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (++flushPendingCount >= explicitFlushAfterFlushes) {
+            flushNow(ctx);
+        } else if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // Flushes by later handlers on read complete are merged with those made during the read
+        ctx.fireChannelReadComplete();
+        readInProgress = false;
+        flushIfNeeded(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // Let the outbound buffer drain, rather than holding writes the client is waiting on
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (flushPendingCount > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushPendingCount = 0;
+        ctx.flush();
+    }
+}
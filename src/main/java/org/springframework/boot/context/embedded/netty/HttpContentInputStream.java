@@ -17,53 +17,200 @@
 
 package org.springframework.boot.context.embedded.netty;
 
-import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.LastHttpContent;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
- * A {@link javax.servlet.ServletInputStream} that allows reading from {@link Queue} of {@link HttpContent}, adapting
- * Netty HTTP codec POJOs into a stream readable by servlets.
+ * A {@link javax.servlet.ServletInputStream} that allows reading from a {@link SpscContentQueue} of
+ * {@link HttpContent}, adapting Netty HTTP codec POJOs into a stream readable by servlets.
+ * <p>
+ * The bytes queued for the servlet are counted, so the {@link ServletContentHandler} can stop reading from the channel
+ * when a fast client gets ahead of a slow servlet. Reading resumes once the servlet has drained the queue to the low
+ * water mark, so the memory held for a request body is bounded regardless of its size.
+ * <p>
+ * Blocking readers waiting for content optionally spin on the queue for a bounded number of polls, and then park until
+ * the event loop adds content and wakes them, or the read timeout elapses.
+ * <p>
+ * With a {@link ReadListener}, reads never block. The listener is notified on the servlet executor when content
+ * arrives after {@link #isReady()} returned false, when the body has been read, and when the channel closes before
+ * then. The executor runs a channel's tasks in order, so notifications are delivered in the order they're raised.
  *
  * @author Danny Thomas
  */
 class HttpContentInputStream extends ServletInputStream {
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+    static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+    static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
     private final Channel channel;
+    private final Executor servletExecutor;
     private AtomicBoolean closed;
-    private final BlockingQueue<HttpContent> queue;
+    private final SpscContentQueue queue;
+    private final int lowWaterMark;
+    private final int highWaterMark;
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean readingSuspended = new AtomicBoolean();
+    private final long readTimeoutMillis;
+    private final int readSpins;
+    private volatile Thread waiter;
+    private volatile ReadListener readListener;
+    private final AtomicBoolean readListenerPending = new AtomicBoolean();
+    private boolean allDataReadRaised; // only accessed by the reader
+    private volatile boolean allDataRead;
+    private volatile boolean discarding;
     private HttpContent current;
-    private ReadListener readListener;
+    private HttpServletRequest servletRequest;
 
     HttpContentInputStream(Channel channel) {
+        this(channel, DEFAULT_LOW_WATER_MARK, DEFAULT_HIGH_WATER_MARK);
+    }
+
+    /**
+     * @param lowWaterMark  the number of queued bytes at or below which reading from the channel is resumed
+     * @param highWaterMark the number of queued bytes above which reading from the channel should be suspended
+     */
+    HttpContentInputStream(Channel channel, int lowWaterMark, int highWaterMark) {
+        this(channel, MoreExecutors.directExecutor(), lowWaterMark, highWaterMark, DEFAULT_READ_TIMEOUT_MILLIS, 0);
+    }
+
+    /**
+     * @param servletExecutor   the executor {@link ReadListener}s are notified on
+     * @param lowWaterMark      the number of queued bytes at or below which reading from the channel is resumed
+     * @param highWaterMark     the number of queued bytes above which reading from the channel should be suspended
+     * @param readTimeoutMillis the maximum time a blocking read waits for content, or 0 for no limit
+     * @param readSpins         the number of times a blocking reader polls for content before parking
+     */
+    HttpContentInputStream(Channel channel, Executor servletExecutor, int lowWaterMark, int highWaterMark, long readTimeoutMillis,
+                           int readSpins) {
+        checkArgument(lowWaterMark >= 0, "lowWaterMark must not be negative");
+        checkArgument(highWaterMark >= lowWaterMark, "highWaterMark must be at least lowWaterMark");
+        checkArgument(readTimeoutMillis >= 0, "readTimeoutMillis must not be negative");
+        checkArgument(readSpins >= 0, "readSpins must not be negative");
         this.channel = checkNotNull(channel);
+        this.servletExecutor = checkNotNull(servletExecutor);
         this.closed = new AtomicBoolean();
-        queue = new LinkedBlockingQueue<>();
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.readSpins = readSpins;
+        queue = new SpscContentQueue();
+    }
+
+    /**
+     * Set the request this is the body of, so non-blocking input can check the request is async.
+     */
+    void setServletRequest(HttpServletRequest servletRequest) {
+        this.servletRequest = servletRequest;
     }
 
+    /**
+     * Add content for the servlet to read. The stream takes ownership of the content, and releases it once it's been
+     * read or discarded.
+     */
     public void addContent(HttpContent httpContent) {
-        checkNotClosed();
-        queue.offer(httpContent.retain());
-        // TODO limit the number of queued inputs, stop handler from reading from channel
+        if (discarding) {
+            httpContent.release();
+            return;
+        }
+        if (closed.get()) {
+            httpContent.release();
+            throw new IllegalStateException("Stream is closed");
+        }
+        queue.offer(httpContent);
+        // The atomic update also orders the queued content before the reads of the waiter and pending listener, so a
+        // reader that finds the queue empty after registering is always woken or notified
+        queuedBytes.addAndGet(httpContent.content().readableBytes());
+        wakeWaiter();
+        if (readListenerPending.compareAndSet(true, false)) {
+            notifyReadListener();
+        }
     }
 
+    private void wakeWaiter() {
+        Thread waiter = this.waiter;
+        if (null != waiter) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Returns true if the bytes queued for the servlet exceed the high water mark, and reading from the channel should
+     * be suspended.
+     */
+    boolean isOverHighWaterMark() {
+        return !discarding && queuedBytes.get() > highWaterMark;
+    }
+
+    /**
+     * Record that reading from the channel has been suspended, so it's resumed once the servlet drains the queue to the
+     * low water mark.
+     */
+    void readingSuspended() {
+        readingSuspended.set(true);
+        // The servlet may have drained the queue before the suspension was recorded
+        resumeReadingIfDrained();
+    }
+
+    private void resumeReadingIfDrained() {
+        if (queuedBytes.get() <= lowWaterMark && readingSuspended.compareAndSet(true, false)) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * Read a line, scanning each chunk for a line feed in place rather than reading a byte at a time.
+     */
     @Override
     public int readLine(byte[] b, int off, int len) throws IOException {
         checkNotNull(b);
-        // TODO use ByteBuf native approach, i.e. bytesBefore, ByteBufProcessor
-        return super.readLine(b, off, len);
+        if (len <= 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < len) {
+            if (total > 0 && !isBlockingOrReady()) {
+                break;
+            }
+            ByteBuf content = nextContent();
+            if (null == content) {
+                break;
+            }
+            int length = Math.min(len - total, content.readableBytes());
+            int lineFeed = content.forEachByte(content.readerIndex(), length, ByteBufProcessor.FIND_LF);
+            if (lineFeed >= 0) {
+                length = lineFeed - content.readerIndex() + 1;
+            }
+            content.readBytes(b, off + total, length);
+            total += length;
+            releaseIfConsumed();
+            if (lineFeed >= 0) {
+                break;
+            }
+        }
+        return 0 == total && isFinished() ? endOfContent() : total;
     }
 
     @Override
@@ -79,21 +226,172 @@ class HttpContentInputStream extends ServletInputStream {
     @Override
     public boolean isReady() {
         checkNotClosed();
-        return (current != null && current.content().readableBytes() > 0) || !queue.isEmpty();
+        if (hasContent()) {
+            return true;
+        }
+        if (null == readListener) {
+            return false;
+        }
+        if (isFinished()) {
+            raiseAllDataRead();
+            return false;
+        }
+        // Registered before checking again, as the event loop may have added content since. If the event loop claims
+        // the registration first, the listener is notified instead
+        readListenerPending.set(true);
+        if (hasContent()) {
+            return readListenerPending.compareAndSet(true, false);
+        }
+        if (isFinished() && readListenerPending.compareAndSet(true, false)) {
+            // The last content arrived since
+            raiseAllDataRead();
+        }
+        return false;
+    }
+
+    private boolean hasContent() {
+        // Empty content other than the last has nothing to read, so it's taken from the queue rather than reported
+        while (null == current || !current.content().isReadable()) {
+            if (isLastContent()) {
+                return false;
+            }
+            HttpContent content = queue.poll();
+            if (null == content) {
+                return false;
+            }
+            setCurrent(content);
+        }
+        return true;
     }
 
     @Override
     public void setReadListener(ReadListener readListener) {
         checkNotClosed();
         checkNotNull(readListener);
+        checkState(null == this.readListener, "A ReadListener has already been set");
+        checkState(null != servletRequest && servletRequest.isAsyncStarted(), "A ReadListener can only be set for an async request");
         this.readListener = readListener;
+        // The listener is first notified as soon as content is available, which may already be the case
+        readListenerPending.set(true);
+        if ((hasContent() || isFinished()) && readListenerPending.compareAndSet(true, false)) {
+            notifyReadListener();
+        }
+    }
+
+    private void raiseAllDataRead() {
+        if (!allDataReadRaised) {
+            allDataReadRaised = true;
+            notifyReadListener();
+        }
     }
 
+    /**
+     * Notify the listener on the servlet executor, that data is available, or that all data has been read.
+     */
+    private void notifyReadListener() {
+        final ReadListener listener = readListener;
+        servletExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (closed.get() || discarding || allDataRead) {
+                    return;
+                }
+                try {
+                    // Takes the next content, so the end of the body is reported without another onDataAvailable
+                    if (hasContent()) {
+                        listener.onDataAvailable();
+                    } else if (isFinished()) {
+                        allDataRead = true;
+                        listener.onAllDataRead();
+                    } else if (isReady()) {
+                        // Only empty content had arrived, and more arrived while registering for it
+                        listener.onDataAvailable();
+                    }
+                } catch (Throwable t) {
+                    listener.onError(t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the event loop when the channel becomes inactive, notifying the listener of the error if the body
+     * hasn't been read.
+     */
+    void channelInactive() throws IOException {
+        close();
+        final ReadListener listener = readListener;
+        if (null != listener && !allDataRead && !discarding) {
+            servletExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onError(new ClosedChannelException());
+                }
+            });
+        }
+    }
+
+    /**
+     * Discard the content the servlet hasn't read once its response is complete, along with any still to arrive, so an
+     * unread body doesn't hold buffers or leave reading from the channel suspended.
+     * <p>
+     * Content arriving from now on is released by the event loop as it's added. What's already queued is drained on the
+     * servlet executor, which runs the channel's tasks in order, so the queue and the current content are only ever
+     * consumed by one thread, after the request and any read listener notifications have finished with them.
+     */
+    void discardRemaining() {
+        if (discarding) {
+            return;
+        }
+        discarding = true;
+        Runnable discard = new Runnable() {
+            @Override
+            public void run() {
+                discard();
+            }
+        };
+        try {
+            servletExecutor.execute(discard);
+        } catch (RejectedExecutionException e) {
+            // The executor has shut down, so nothing is left to read the content
+            discard.run();
+        }
+    }
+
+    private void discard() {
+        if (null != current) {
+            current.release();
+        }
+        // Any further reads see the end of the body
+        current = LastHttpContent.EMPTY_LAST_CONTENT;
+        HttpContent content;
+        while (null != (content = queue.poll())) {
+            content.release();
+        }
+        queuedBytes.set(0);
+        resumeReadingIfDrained();
+    }
+
+    /**
+     * Skip content by advancing the reader index of each chunk, releasing chunks as they're consumed.
+     */
     @Override
     public long skip(long n) throws IOException {
-        checkNotClosed();
-        // TODO implement skip that doesn't read bytes
-        return readContent(Ints.checkedCast(n)).readableBytes();
+        long skipped = 0;
+        while (skipped < n) {
+            if (skipped > 0 && !isBlockingOrReady()) {
+                break;
+            }
+            ByteBuf content = nextContent();
+            if (null == content) {
+                break;
+            }
+            int length = (int) Math.min(n - skipped, content.readableBytes());
+            content.skipBytes(length);
+            skipped += length;
+            releaseIfConsumed();
+        }
+        return skipped;
     }
 
     @Override
@@ -104,9 +402,8 @@ class HttpContentInputStream extends ServletInputStream {
     @Override
     public void close() throws IOException {
         if (closed.compareAndSet(false, true)) {
-            // FIXME release the non-written HttpContents?
-            queue.clear();
-            current = null;
+            // Content is released once the response completes, as only the reader may take it from the queue until then
+            wakeWaiter();
         }
     }
 
@@ -116,51 +413,134 @@ class HttpContentInputStream extends ServletInputStream {
         if (0 == len) {
             return 0;
         }
-        poll();
-        if (isFinished()) {
-            return -1;
+        ByteBuf content = nextContent();
+        if (null == content) {
+            return endOfContent();
         }
-        ByteBuf byteBuf = readContent(len);
-        int readableBytes = byteBuf.readableBytes();
-        byteBuf.readBytes(b, off, readableBytes);
-        return readableBytes - byteBuf.readableBytes();
+        int length = Math.min(len, content.readableBytes());
+        content.readBytes(b, off, length);
+        releaseIfConsumed();
+        return length;
     }
 
     @Override
     public int read() throws IOException {
-        poll();
-        if (isFinished()) {
-            return -1;
+        ByteBuf content = nextContent();
+        if (null == content) {
+            return endOfContent();
         }
-        return readContent(1).getByte(0);
+        int b = content.readUnsignedByte();
+        releaseIfConsumed();
+        return b;
     }
 
-    private ByteBuf readContent(int length) throws IOException {
-        ByteBuf content = current.content();
-        if (length < content.readableBytes()) {
-            return content.readSlice(length);
-        } else {
-            return content;
+    /**
+     * Get the content to read from next, waiting for it if blocking, or null at the end of the body. Empty content
+     * other than the last is skipped.
+     *
+     * @throws IllegalStateException if non-blocking and no content is available
+     */
+    private ByteBuf nextContent() throws IOException {
+        while (true) {
+            poll();
+            if (isFinished()) {
+                return null;
+            }
+            if (null != current && current.content().isReadable()) {
+                return current.content();
+            }
+            if (null != readListener && queue.isEmpty()) {
+                throw new IllegalStateException("No content is available to read, isReady() returned false");
+            }
+        }
+    }
+
+    /**
+     * Returns true if reading more would block rather than fail, so a read that's made progress may continue.
+     */
+    private boolean isBlockingOrReady() {
+        return null == readListener || hasContent();
+    }
+
+    private int endOfContent() {
+        if (null != readListener) {
+            raiseAllDataRead();
+        }
+        return -1;
+    }
+
+    /**
+     * Release the current content once it's been read, other than the last content, which marks the end of the body.
+     */
+    private void releaseIfConsumed() {
+        if (!current.content().isReadable() && !isLastContent()) {
+            current.release();
+            current = null;
         }
     }
 
     private void poll() throws IOException {
         checkNotClosed();
-        if (null == current || current.content().readableBytes() == 0) {
-            boolean blocking = null == readListener;
-            while (!isLastContent()) {
-                try {
-                    // FIXME add appropriate timeout value
-                    current = queue.poll(0, TimeUnit.NANOSECONDS);
-                } catch (InterruptedException ignored) {
+        if ((null == current || current.content().readableBytes() == 0) && !isLastContent()) {
+            HttpContent content = queue.poll();
+            if (null == content && null == readListener) {
+                content = awaitContent();
+            }
+            if (null != content) {
+                setCurrent(content);
+            }
+        }
+    }
+
+    private void setCurrent(HttpContent content) {
+        if (null != current) {
+            current.release();
+        }
+        current = content;
+        queuedBytes.addAndGet(-content.content().readableBytes());
+        resumeReadingIfDrained();
+    }
+
+    /**
+     * Wait for the event loop to add content, spinning on the queue for the configured number of polls before parking.
+     */
+    private HttpContent awaitContent() throws IOException {
+        if (channel.isRegistered() && channel.eventLoop().inEventLoop()) {
+            // Content is delivered by the event loop, so this read would never complete
+            throw new IOException("Blocking read attempted on the event loop by a non-blocking servlet");
+        }
+        HttpContent content;
+        for (int i = 0; i < readSpins; i++) {
+            if (null != (content = queue.poll())) {
+                return content;
+            }
+        }
+        long readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        long deadlineNanos = System.nanoTime() + readTimeoutNanos;
+        waiter = Thread.currentThread();
+        try {
+            // Checked again after the waiter is published, as content may have been added before it was visible
+            while (null == (content = queue.poll())) {
+                if (closed.get() || !channel.isActive()) {
+                    throw new IOException("Channel is not active");
                 }
-                if (current != null || !blocking) {
-                    break;
+                long parkNanos = POLL_INTERVAL_NANOS;
+                if (readTimeoutNanos > 0) {
+                    long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        throw new SocketTimeoutException("No request content received for " + readTimeoutMillis + "ms");
+                    }
+                    parkNanos = Math.min(parkNanos, remainingNanos);
                 }
-                if (!channel.isActive()) {
-                    throw new IOException("Channel is not active");
+                // Timed, so the reader still notices the channel closing
+                LockSupport.parkNanos(this, parkNanos);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for request content");
                 }
             }
+            return content;
+        } finally {
+            waiter = null;
         }
     }
 
@@ -22,13 +22,21 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -36,6 +44,12 @@ import static com.google.common.base.Preconditions.checkState;
 /**
  * A buffered {@link ServletOutputStream}, that writes Netty HTTP codec POJOs to the associated
  * {@link ChannelHandlerContext}.
+ * <p>
+ * Content is written directly into a {@link ByteBuf} obtained lazily from the channel's allocator, and the buffer
+ * itself is written to the channel when it fills or the stream is flushed, so response bytes are copied once.
+ * <p>
+ * Writes respect the writability of the channel. Blocking writers park until a slow client has drained the outbound
+ * buffer below its low water mark, and with a {@link WriteListener} {@link #isReady()} reports writability instead.
  *
  * @author Danny Thomas
  */
@@ -44,52 +58,147 @@ class HttpResponseOutputStream extends ServletOutputStream {
 
     private final ChannelHandlerContext ctx;
     private final NettyHttpServletResponse servletResponse;
-    private byte[] buf;
-    private int count;
+    private final ChannelWritabilityMonitor writabilityMonitor;
+    private ByteBuf buffer;
+    private int bufferSize;
     private boolean closed;
     private WriteListener writeListener;
 
-    HttpResponseOutputStream(ChannelHandlerContext ctx, NettyHttpServletResponse servletResponse) {
+    HttpResponseOutputStream(ChannelHandlerContext ctx, NettyHttpServletResponse servletResponse,
+                             ChannelWritabilityMonitor writabilityMonitor) {
         this.ctx = ctx;
         this.servletResponse = servletResponse;
-        this.buf = new byte[DEFAULT_BUFFER_SIZE];
+        this.writabilityMonitor = writabilityMonitor;
+        this.bufferSize = DEFAULT_BUFFER_SIZE;
     }
 
     @Override
     public boolean isReady() {
-        return true; // TODO implement
+        if (null == writeListener) {
+            return ctx.channel().isWritable();
+        }
+        return writabilityMonitor.isWritable(writeListener);
     }
 
     @Override
     public void setWriteListener(WriteListener writeListener) {
         checkNotNull(writeListener);
-        // TODO ISE when called more than once
-        // TODO ISE when associated request is not async
+        checkState(null == this.writeListener, "A WriteListener has already been set");
+        checkState(servletResponse.isAsyncStarted(), "A WriteListener can only be set for an async request");
+        this.writeListener = writeListener;
+        writabilityMonitor.notifyWritePossible(writeListener);
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        if (len > count) {
+        checkState(!closed, "Stream is closed");
+        if (len > bufferSize) {
+            // Larger than the buffer, so write it as its own content
             flushBuffer();
-            ByteBuf content = ctx.alloc().buffer(len);
+            ByteBuf content = ctx.alloc().directBuffer(len);
             content.writeBytes(b, off, len);
             writeContent(content, false);
             return;
         }
         writeBufferIfNeeded(len);
-        System.arraycopy(b, off, buf, count, len);
-        count += len;
+        buffer.writeBytes(b, off, len);
     }
 
     @Override
     public void write(int b) throws IOException {
         writeBufferIfNeeded(1);
-        buf[count++] = (byte) b;
+        buffer.writeByte(b);
+    }
+
+    /**
+     * Get the buffer to write content into directly, with at least the given number of writable bytes, or the
+     * buffer size if that's smaller.
+     */
+    ByteBuf writableBuffer(int minWritableBytes) throws IOException {
+        writeBufferIfNeeded(Math.min(minWritableBytes, bufferSize));
+        return buffer;
     }
 
     private void writeBufferIfNeeded(int len) throws IOException {
-        if (len > buf.length - count) {
+        if (null == buffer) {
+            checkState(!closed, "Stream is closed");
+            buffer = ctx.alloc().directBuffer(bufferSize);
+        } else if (len > bufferSize - buffer.readableBytes()) {
             flushBuffer();
+            buffer = ctx.alloc().directBuffer(bufferSize);
+        }
+    }
+
+    /**
+     * Write the content of a file as the remainder of the response, and close the stream. The file is written as a
+     * {@link DefaultFileRegion}, so the transport can transfer it to the socket without copying it through the heap.
+     * <p>
+     * A region is only written as the whole body of a response with a <code>Content-Length</code>, which handlers that
+     * transform content, such as response compression, pass on as is. If content has already been written, the file
+     * is copied through the stream instead.
+     */
+    void writeFile(File file) throws IOException {
+        checkState(!closed, "Stream is closed");
+        if (servletResponse.isCommitted() || (null != buffer && buffer.isReadable())) {
+            try (InputStream in = new FileInputStream(file)) {
+                transferFrom(in);
+            }
+            close();
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long length;
+        try {
+            length = raf.length();
+            servletResponse.setContentLengthLong(length);
+            writeResponse();
+            if (null == writeListener) {
+                writabilityMonitor.awaitWritable();
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        // The region closes the file once it's been written
+        ctx.write(new DefaultFileRegion(raf.getChannel(), 0, length), ctx.voidPromise());
+        close();
+    }
+
+    /**
+     * Write a buffer as the remainder of the response, and close the stream. The buffer is written as is, so shared
+     * content can be written without copying, and it's released once written.
+     */
+    void writeLastContent(ByteBuf content) throws IOException {
+        if (closed) {
+            content.release();
+            throw new IllegalStateException("Stream is closed");
+        }
+        closed = true;
+        try {
+            try {
+                flushBuffer();
+            } catch (IOException | RuntimeException e) {
+                content.release();
+                throw e;
+            }
+            writeContent(content, true);
+            ctx.flush();
+        } finally {
+            releaseBuffer();
+            servletResponse.responseCompleted();
+        }
+    }
+
+    /**
+     * Read an input stream to its end directly into the buffer.
+     */
+    void transferFrom(InputStream in) throws IOException {
+        while (true) {
+            // Fills the buffer before it's written
+            ByteBuf buffer = writableBuffer(1);
+            if (buffer.writeBytes(in, buffer.writableBytes()) < 0) {
+                return;
+            }
         }
     }
 
@@ -98,28 +207,38 @@ class HttpResponseOutputStream extends ServletOutputStream {
         flushBuffer();
     }
 
-    private void flushBuffer() {
+    private void flushBuffer() throws IOException {
         flushBuffer(false);
     }
 
-    private void flushBuffer(boolean lastContent) {
-        if (count > 0) {
-            ByteBuf content = ctx.alloc().buffer(count);
-            content.writeBytes(buf, 0, count);
-            count = 0;
+    private void flushBuffer(boolean lastContent) throws IOException {
+        if (null != buffer && buffer.isReadable()) {
+            ByteBuf content = buffer;
+            buffer = null;
             writeContent(content, lastContent);
         } else if (lastContent) {
             writeContent(Unpooled.EMPTY_BUFFER, true);
         }
     }
 
-    private void writeContent(ByteBuf content, boolean lastContent) {
-        // TODO block if channel is not writable to avoid heap utilisation
+    private void writeContent(ByteBuf content, boolean lastContent) throws IOException {
+        if (null == writeListener) {
+            // Blocking writers wait for a slow client, rather than growing the outbound buffer without bound
+            try {
+                writabilityMonitor.awaitWritable();
+            } catch (IOException e) {
+                content.release();
+                throw e;
+            }
+        }
         if (!servletResponse.isCommitted()) {
-            writeResponse(lastContent);
+            if (lastContent) {
+                writeFullResponse(content);
+                return;
+            }
+            writeResponse();
         }
         if (content.readableBytes() > 0) {
-            assert content.refCnt() == 1;
             ctx.write(content, ctx.voidPromise());
         }
         if (lastContent) {
@@ -131,19 +250,42 @@ class HttpResponseOutputStream extends ServletOutputStream {
         }
     }
 
-    private void writeResponse(boolean lastContent) {
+    /**
+     * Write a response whose content is entirely buffered as a single message, so it takes one pass through the
+     * pipeline and the encoder can write the headers and content together.
+     */
+    private void writeFullResponse(ByteBuf content) {
         HttpResponse response = servletResponse.getNettyResponse();
-        // TODO implement exceptions required by http://tools.ietf.org/html/rfc2616#section-4.4
-        if (!HttpHeaders.isContentLengthSet(response)) {
-            if (lastContent) {
-                HttpHeaders.setContentLength(response, count);
-            } else {
-                HttpHeaders.setTransferEncodingChunked(response);
-            }
+        if (!HttpHeaders.isContentLengthSet(response) && mayHaveContent(response)) {
+            HttpHeaders.setContentLength(response, content.readableBytes());
+        }
+        FullHttpResponse fullResponse = new DefaultFullHttpResponse(response.protocolVersion(), response.status(), content, false);
+        fullResponse.headers().set(response.headers());
+        ChannelFuture future = ctx.write(fullResponse);
+        if (!HttpHeaders.isKeepAlive(response)) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private void writeResponse() {
+        HttpResponse response = servletResponse.getNettyResponse();
+        if (!HttpHeaders.isContentLengthSet(response) && mayHaveContent(response)) {
+            HttpHeaders.setTransferEncodingChunked(response);
         }
         ctx.write(response, ctx.voidPromise());
     }
 
+    /**
+     * Returns false for statuses whose responses never have a body, so they're written without framing headers. A 304
+     * in particular may only have the <code>Content-Length</code> the 200 would, see
+     * http://tools.ietf.org/html/rfc7232#section-4.1
+     */
+    private static boolean mayHaveContent(HttpResponse response) {
+        int status = response.status().code();
+        return status >= 200 && HttpResponseStatus.NO_CONTENT.code() != status
+                && HttpResponseStatus.NOT_MODIFIED.code() != status;
+    }
+
     @Override
     public void close() throws IOException {
         if (closed) {
@@ -154,22 +296,42 @@ class HttpResponseOutputStream extends ServletOutputStream {
             flushBuffer(true);
             ctx.flush();
         } finally {
-            buf = null;
+            releaseBuffer();
+            servletResponse.responseCompleted();
+        }
+    }
+
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseBuffer();
+        servletResponse.responseCompleted();
+    }
+
+    private void releaseBuffer() {
+        if (null != buffer) {
+            buffer.release();
+            buffer = null;
         }
     }
 
     void resetBuffer() {
         assert !servletResponse.isCommitted();
-        count = 0;
+        if (null != buffer) {
+            buffer.clear();
+        }
     }
 
     int getBufferSize() {
-        return buf.length;
+        return bufferSize;
     }
 
     void setBufferSize(int size) {
         assert !servletResponse.isCommitted();
-        checkState(count == 0, "Response body content has been written");
-        buf = new byte[size];
+        checkState(null == buffer || !buffer.isReadable(), "Response body content has been written");
+        releaseBuffer();
+        bufferSize = size;
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.base.Charsets;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A {@link Writer} that encodes characters directly into the buffer of a {@link HttpResponseOutputStream}, without the
+ * intermediate char and byte buffers of an {@link java.io.OutputStreamWriter}.
+ * <p>
+ * ISO-8859-1, US-ASCII and UTF-8 are encoded by specialised loops, and other charsets by the thread's cached
+ * {@link CharsetEncoder} for the charset. Unmappable characters are replaced with <code>?</code>.
+ *
+ * @author Danny Thomas
+ */
+class HttpResponseWriter extends Writer {
+    private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+    private static final byte REPLACEMENT = '?';
+
+    private final HttpResponseOutputStream outputStream;
+    private final Charset charset;
+    private final int maxByteValue;
+    private final boolean utf8;
+    private char highSurrogate;
+
+    HttpResponseWriter(HttpResponseOutputStream outputStream, Charset charset) {
+        this.outputStream = outputStream;
+        this.charset = charset;
+        utf8 = Charsets.UTF_8.equals(charset);
+        if (Charsets.ISO_8859_1.equals(charset)) {
+            maxByteValue = 0xFF;
+        } else if (Charsets.US_ASCII.equals(charset)) {
+            maxByteValue = 0x7F;
+        } else {
+            maxByteValue = -1;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (maxByteValue > 0) {
+            outputStream.writableBuffer(1).writeByte(c <= maxByteValue ? c : REPLACEMENT);
+        } else {
+            write(new char[]{(char) c}, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(CharBuffer.wrap(cbuf), off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write((CharSequence) str, off, len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        CharSequence s = null == csq ? "null" : csq;
+        write(s, 0, s.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence s = null == csq ? "null" : csq;
+        write(s, start, end - start);
+        return this;
+    }
+
+    private void write(CharSequence s, int off, int len) throws IOException {
+        if (utf8) {
+            writeUtf8(s, off, len);
+        } else if (maxByteValue > 0) {
+            writeSingleByte(s, off, len);
+        } else {
+            writeEncoded(CharBuffer.wrap(s, off, off + len));
+        }
+    }
+
+    private void writeSingleByte(CharSequence s, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            ByteBuf buffer = outputStream.writableBuffer(end - off);
+            int chunkEnd = off + Math.min(end - off, buffer.writableBytes());
+            for (int i = off; i < chunkEnd; i++) {
+                char c = s.charAt(i);
+                buffer.writeByte(c <= maxByteValue ? c : REPLACEMENT);
+            }
+            off = chunkEnd;
+        }
+    }
+
+    private void writeUtf8(CharSequence s, int off, int len) throws IOException {
+        int end = off + len;
+        if (0 != highSurrogate && off < end) {
+            // Complete a surrogate pair split across writes
+            char low = s.charAt(off++);
+            ByteBuf buffer = outputStream.writableBuffer(4);
+            if (Character.isLowSurrogate(low)) {
+                writeCodePoint(buffer, Character.toCodePoint(highSurrogate, low));
+            } else {
+                buffer.writeByte(REPLACEMENT);
+                off--;
+            }
+            highSurrogate = 0;
+        }
+        while (off < end) {
+            // Reserve the worst case for the chunk, so the loop needn't check the space remaining for each char. The
+            // extra byte allows for a surrogate pair straddling the end of the chunk
+            ByteBuf buffer = outputStream.writableBuffer((end - off) * MAX_UTF8_BYTES_PER_CHAR + 1);
+            int chunkEnd = off + Math.max(1, Math.min(end - off, (buffer.writableBytes() - 1) / MAX_UTF8_BYTES_PER_CHAR));
+            for (int i = off; i < chunkEnd; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buffer.writeByte(c);
+                } else if (c < 0x800) {
+                    buffer.writeByte(0xC0 | (c >> 6));
+                    buffer.writeByte(0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    buffer.writeByte(0xE0 | (c >> 12));
+                    buffer.writeByte(0x80 | ((c >> 6) & 0x3F));
+                    buffer.writeByte(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c)) {
+                    if (i + 1 == end) {
+                        highSurrogate = c;
+                    } else if (Character.isLowSurrogate(s.charAt(i + 1))) {
+                        // Four bytes for two chars
+                        writeCodePoint(buffer, Character.toCodePoint(c, s.charAt(++i)));
+                        if (i == chunkEnd) {
+                            chunkEnd++;
+                        }
+                    } else {
+                        buffer.writeByte(REPLACEMENT);
+                    }
+                } else {
+                    buffer.writeByte(REPLACEMENT);
+                }
+            }
+            off = chunkEnd;
+        }
+    }
+
+    private static void writeCodePoint(ByteBuf buffer, int codePoint) {
+        buffer.writeByte(0xF0 | (codePoint >> 18));
+        buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+        buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+        buffer.writeByte(0x80 | (codePoint & 0x3F));
+    }
+
+    private void writeEncoded(CharBuffer in) throws IOException {
+        CharsetEncoder encoder = CharsetUtil.getEncoder(charset);
+        encoder.reset();
+        int minWritableBytes = (int) Math.ceil(in.remaining() * encoder.maxBytesPerChar());
+        boolean flushing = false;
+        while (true) {
+            ByteBuf buffer = outputStream.writableBuffer(minWritableBytes);
+            ByteBuffer out = buffer.nioBuffer(buffer.writerIndex(), buffer.writableBytes());
+            CoderResult result = flushing ? encoder.flush(out) : encoder.encode(in, out, true);
+            buffer.writerIndex(buffer.writerIndex() + out.position());
+            if (result.isUnderflow()) {
+                if (flushing) {
+                    return;
+                }
+                flushing = true;
+            } else if (result.isOverflow()) {
+                // Start a new buffer
+                minWritableBytes = buffer.writableBytes() + 1;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (0 != highSurrogate) {
+            outputStream.writableBuffer(1).writeByte(REPLACEMENT);
+            highSurrogate = 0;
+        }
+        outputStream.close();
+    }
+}
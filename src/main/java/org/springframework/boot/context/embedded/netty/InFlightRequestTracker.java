@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks requests that have been received but not yet responded to, including queued pipelined requests and
+ * requests with an open {@link javax.servlet.AsyncContext}, so the container can drain them before stopping.
+ *
+ * @author Danny Thomas
+ */
+class InFlightRequestTracker {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean draining;
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void requestCompleted() {
+        if (inFlight.decrementAndGet() == 0 && draining) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Is the container draining, in which case responses should close their connections.
+     */
+    boolean isDraining() {
+        return draining;
+    }
+
+    void startDraining() {
+        draining = true;
+    }
+
+    /**
+     * Wait for in-flight requests to complete.
+     *
+     * @return the number of requests still in-flight when the timeout elapsed
+     */
+    int awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (inFlight.get() > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+        }
+        return Math.max(0, inFlight.get());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link ServletExecutionStrategy} that executes requests inline on the channel's {@link EventLoop}, avoiding a
+ * thread handoff entirely.
+ * <p>
+ * Only suitable for applications where no filter or servlet ever blocks, because a blocked request stalls every
+ * channel registered with the same event loop.
+ *
+ * @author Danny Thomas
+ */
+public class InlineServletExecutionStrategy implements ServletExecutionStrategy {
+    @Override
+    public void start(EventLoopGroup workerGroup) {
+    }
+
+    @Override
+    public Executor executor(Channel channel) {
+        return new EventLoopExecutor(channel.eventLoop());
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * An {@link Executor} that runs tasks directly when called from the event loop, such as when a request is read,
+     * and otherwise schedules them on the event loop, such as for async dispatches.
+     */
+    static class EventLoopExecutor implements Executor {
+        private final EventLoop eventLoop;
+
+        EventLoopExecutor(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (eventLoop.inEventLoop()) {
+                task.run();
+            } else {
+                eventLoop.execute(task);
+            }
+        }
+    }
+}
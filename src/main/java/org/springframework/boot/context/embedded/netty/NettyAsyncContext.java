@@ -18,13 +18,13 @@
 package org.springframework.boot.context.embedded.netty;
 
 import com.google.common.collect.ImmutableList;
-import io.netty.channel.ChannelHandlerContext;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Netty {@link AsyncContext}.
@@ -33,14 +33,14 @@ import java.util.List;
  */
 class NettyAsyncContext implements AsyncContext {
     private ServletRequest servletRequest;
-    private final ChannelHandlerContext ctx;
+    private final Executor servletExecutor;
     private ServletResponse servletResponse;
     private boolean asyncStarted;
     private List<AsyncListener> listeners;
 
-    NettyAsyncContext(ServletRequest servletRequest, ChannelHandlerContext ctx) {
+    NettyAsyncContext(ServletRequest servletRequest, Executor servletExecutor) {
         this.servletRequest = servletRequest;
-        this.ctx = ctx;
+        this.servletExecutor = servletExecutor;
         this.listeners = new ArrayList<>();
     }
 
@@ -93,7 +93,7 @@ class NettyAsyncContext implements AsyncContext {
         httpRequest.setAttribute(ASYNC_REQUEST_URI, httpRequest.getRequestURI());
         httpRequest.setAttribute(ASYNC_SERVLET_PATH, httpRequest.getServletPath());
         final NettyRequestDispatcher dispatcher = (NettyRequestDispatcher) context.getRequestDispatcher(path);
-        ctx.executor().submit(new Runnable() {
+        servletExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -122,7 +122,7 @@ class NettyAsyncContext implements AsyncContext {
 
     @Override
     public void start(Runnable run) {
-        ctx.executor().submit(run, Object.class);
+        servletExecutor.execute(run);
     }
 
     @Override
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.springframework.boot.context.embedded.netty.StaticResourceCache.CachedResource;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * The default servlet, serving static resources from the document root, and from <code>META-INF/resources</code> on
+ * the classpath.
+ * <p>
+ * Files are written with a {@link io.netty.channel.DefaultFileRegion}, which the transport transfers to the socket
+ * without copying through the heap, using <code>sendfile</code> on the epoll transport. Resources in jars are read
+ * in chunks directly into the response buffer. Responses have <code>Last-Modified</code> and <code>ETag</code>
+ * headers, and conditional requests for unchanged resources are answered with <code>304 Not Modified</code>.
+ * <p>
+ * Small resources are served from the context's {@link StaticResourceCache}, if it has one, compressed when the client
+ * accepts it.
+ *
+ * @author Danny Thomas
+ */
+class NettyDefaultServlet extends HttpServlet {
+    static final String NAME = "default";
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        serve(request, response, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        serve(request, response, false);
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, boolean writeContent) throws IOException {
+        NettyEmbeddedContext context = (NettyEmbeddedContext) getServletContext();
+        String path = getPath(request);
+        URL resource = null == path || path.endsWith("/") ? null : context.getResource(path);
+        if (null == resource) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        File file = getFile(resource);
+        if (null != file && !file.isFile()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String mimeType = context.getMimeType(path);
+        StaticResourceCache cache = context.getStaticResourceCache();
+        CachedResource cached = null == cache ? null : cache.get(path, resource, file, mimeType);
+        URLConnection connection = null == file && null == cached ? resource.openConnection() : null;
+        long lastModified;
+        long length;
+        if (null != cached) {
+            lastModified = cached.getLastModified();
+            length = cached.getLength();
+        } else {
+            lastModified = null == file ? connection.getLastModified() : file.lastModified();
+            length = null == file ? connection.getContentLengthLong() : file.length();
+        }
+        String etag = "W/\"" + length + '-' + lastModified + '"';
+        response.setHeader(HttpHeaders.Names.ETAG, etag);
+        if (lastModified > 0) {
+            response.setDateHeader(HttpHeaders.Names.LAST_MODIFIED, lastModified);
+        }
+        if (isNotModified(request, etag, lastModified)) {
+            closeQuietly(connection);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (null != mimeType) {
+            response.setContentType(mimeType);
+        }
+        if (null != cached && writeCached(request, response, cached, writeContent)) {
+            return;
+        }
+        if (length >= 0) {
+            response.setContentLengthLong(length);
+        }
+        if (!writeContent) {
+            closeQuietly(connection);
+            return;
+        }
+        ServletOutputStream outputStream = response.getOutputStream();
+        if (null != file && outputStream instanceof HttpResponseOutputStream) {
+            ((HttpResponseOutputStream) outputStream).writeFile(file);
+            return;
+        }
+        try (InputStream in = null == connection ? resource.openStream() : connection.getInputStream()) {
+            if (outputStream instanceof HttpResponseOutputStream) {
+                ((HttpResponseOutputStream) outputStream).transferFrom(in);
+            } else {
+                // The response has been wrapped by a filter
+                ByteStreams.copy(in, outputStream);
+            }
+        }
+    }
+
+    /**
+     * Write a cached resource, in the best encoding the client accepts, without copying it.
+     *
+     * @return false if the resource could not be written from the cache
+     */
+    private boolean writeCached(HttpServletRequest request, HttpServletResponse response, CachedResource cached,
+                                boolean writeContent) throws IOException {
+        ServletOutputStream outputStream = response.getOutputStream();
+        if (!(outputStream instanceof HttpResponseOutputStream)) {
+            return false;
+        }
+        String encoding = cached.isCompressible()
+                ? ResponseCompressionHandler.getAcceptedEncoding(request.getHeader(HttpHeaders.Names.ACCEPT_ENCODING)) : null;
+        ByteBuf content = cached.retainedContent(encoding);
+        if (null == content) {
+            return false;
+        }
+        if (cached.isCompressible()) {
+            response.setHeader(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+        }
+        String contentEncoding = cached.contentEncoding(encoding);
+        if (null != contentEncoding) {
+            response.setHeader(HttpHeaders.Names.CONTENT_ENCODING, contentEncoding);
+        }
+        response.setContentLength(content.readableBytes());
+        if (writeContent) {
+            ((HttpResponseOutputStream) outputStream).writeLastContent(content);
+        } else {
+            content.release();
+        }
+        return true;
+    }
+
+    private static File getFile(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(resource.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String getPath(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        int queryIndex = uri.indexOf('?');
+        if (queryIndex >= 0) {
+            uri = uri.substring(0, queryIndex);
+        }
+        String path;
+        try {
+            path = new URI(uri).getPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String contextPath = getServletContext().getContextPath();
+        if (!contextPath.isEmpty() && !"/".equals(contextPath)) {
+            if (!path.startsWith(contextPath)) {
+                return null;
+            }
+            path = path.substring(contextPath.length());
+        }
+        return path.isEmpty() ? null : path;
+    }
+
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        // If-None-Match takes precedence, see http://tools.ietf.org/html/rfc7232#section-6
+        String ifNoneMatch = request.getHeader(HttpHeaders.Names.IF_NONE_MATCH);
+        if (null != ifNoneMatch) {
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+            String opaqueTag = etag.substring(2);
+            for (String candidate : ifNoneMatch.split(",")) {
+                // Weak comparison
+                String tag = candidate.trim();
+                if (tag.equals(etag) || tag.equals(opaqueTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (lastModified <= 0) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.Names.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a resolution of a second
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static void closeQuietly(URLConnection connection) {
+        if (null == connection) {
+            return;
+        }
+        try {
+            connection.getInputStream().close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+}
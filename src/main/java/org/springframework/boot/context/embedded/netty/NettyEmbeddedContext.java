@@ -24,6 +24,8 @@ import org.apache.commons.logging.LogFactory;
 
 import javax.servlet.*;
 import javax.servlet.descriptor.JspConfigDescriptor;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -36,6 +38,8 @@ import static com.google.common.base.Preconditions.checkState;
  * Netty servlet bridge {@link ServletContext} implementation.
  */
 class NettyEmbeddedContext implements ServletContext {
+    private static final String META_INF_RESOURCES = "META-INF/resources";
+
     private final Log logger = LogFactory.getLog(NettyEmbeddedContext.class);
 
     private final String contextPath;
@@ -44,6 +48,12 @@ class NettyEmbeddedContext implements ServletContext {
     private final Map<String, String> servletMappings = new HashMap<>();
     private final Map<String, NettyFilterRegistration> filters = new HashMap<>();
     private final AsciiString serverInfo;
+    private final InFlightRequestTracker requestTracker = new InFlightRequestTracker();
+    private final DateHeaderCache dateHeaderCache = new DateHeaderCache();
+    private final ContentTypeCache contentTypeCache = new ContentTypeCache();
+    private final Map<String, String> mimeMappings = new HashMap<>();
+    private File documentRoot;
+    private StaticResourceCache staticResourceCache;
     private volatile boolean initialised;
 
     NettyEmbeddedContext(String contextPath, ClassLoader classLoader, String serverInfo) {
@@ -60,6 +70,43 @@ class NettyEmbeddedContext implements ServletContext {
         return initialised;
     }
 
+    InFlightRequestTracker getRequestTracker() {
+        return requestTracker;
+    }
+
+    DateHeaderCache getDateHeaderCache() {
+        return dateHeaderCache;
+    }
+
+    ContentTypeCache getContentTypeCache() {
+        return contentTypeCache;
+    }
+
+    /**
+     * Set the directory resources are served from, ahead of <code>META-INF/resources</code> on the classpath.
+     */
+    void setDocumentRoot(File documentRoot) {
+        checkNotInitialised();
+        this.documentRoot = documentRoot;
+    }
+
+    /**
+     * Set the cache for static resources served by the default servlet, or null for none.
+     */
+    void setStaticResourceCache(StaticResourceCache staticResourceCache) {
+        checkNotInitialised();
+        this.staticResourceCache = staticResourceCache;
+    }
+
+    StaticResourceCache getStaticResourceCache() {
+        return staticResourceCache;
+    }
+
+    void addMimeMapping(String extension, String mimeType) {
+        checkNotInitialised();
+        mimeMappings.put(extension.toLowerCase(Locale.ENGLISH), checkNotNull(mimeType));
+    }
+
     public void checkNotInitialised() {
         checkState(!isInitialised(), "This method may not be called after the context has been initialised");
     }
@@ -106,7 +153,8 @@ class NettyEmbeddedContext implements ServletContext {
 
     @Override
     public String getMimeType(String file) {
-        return null;
+        int index = file.lastIndexOf('.');
+        return index < 0 ? null : mimeMappings.get(file.substring(index + 1).toLowerCase(Locale.ENGLISH));
     }
 
     @Override
@@ -116,21 +164,63 @@ class NettyEmbeddedContext implements ServletContext {
 
     @Override
     public URL getResource(String path) throws MalformedURLException {
-        return null;
+        if (!path.startsWith("/")) {
+            throw new MalformedURLException("Resource path must start with /: " + path);
+        }
+        File file = getResourceFile(path);
+        if (null != file) {
+            return file.toURI().toURL();
+        }
+        return isValidResourcePath(path) ? classLoader.getResource(META_INF_RESOURCES + path) : null;
+    }
+
+    private File getResourceFile(String path) {
+        if (null == documentRoot || !isValidResourcePath(path)) {
+            return null;
+        }
+        File file = new File(documentRoot, path);
+        return file.isFile() ? file : null;
+    }
+
+    private static boolean isValidResourcePath(String path) {
+        // Resources must not escape the document root, or META-INF/resources
+        return path.startsWith("/") && !path.contains("/../") && !path.endsWith("/..") && path.indexOf('\\') < 0
+                && path.indexOf('\0') < 0;
     }
 
     @Override
     public InputStream getResourceAsStream(String path) {
-        return null;
+        try {
+            URL resource = getResource(path);
+            return null == resource ? null : resource.openStream();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
-    @Override
-    public RequestDispatcher getRequestDispatcher(String path) {
+    private String getServletName(String path) {
         // FIXME proper path matching
         String servletName = servletMappings.get(path);
         if (servletName == null) {
             servletName = servletMappings.get("/");
         }
+        return servletName;
+    }
+
+    /**
+     * Is the servlet mapped to the path non-blocking, and safe to execute on the event loop.
+     *
+     * @see NonBlockingServlet
+     */
+    boolean isNonBlocking(String path) {
+        String servletName = getServletName(path);
+        NettyServletRegistration registration = null == servletName ? null : servlets.get(servletName);
+        return null != registration && registration.isNonBlocking();
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        String servletName = getServletName(path);
         Servlet servlet = null;
         try {
             servlet = null == servletName ? null : servlets.get(servletName).getServlet();
@@ -152,7 +242,18 @@ class NettyEmbeddedContext implements ServletContext {
 
     @Override
     public RequestDispatcher getNamedDispatcher(String name) {
-        return null;
+        NettyServletRegistration registration = servlets.get(name);
+        if (null == registration) {
+            return null;
+        }
+        try {
+            // Filters don't apply to dispatches to a named servlet
+            FilterChain filterChain = new SimpleFilterChain(registration.getServlet(), Collections.<Filter>emptyList());
+            return new NettyRequestDispatcher(this, filterChain);
+        } catch (ServletException e) {
+            // TODO log exception
+            return null;
+        }
     }
 
     @Override
@@ -187,7 +288,10 @@ class NettyEmbeddedContext implements ServletContext {
 
     @Override
     public String getRealPath(String path) {
-        return null;
+        if (null == documentRoot || !isValidResourcePath(path)) {
+            return null;
+        }
+        return new File(documentRoot, path).getAbsolutePath();
     }
 
     @Override
@@ -17,23 +17,23 @@
 
 package org.springframework.boot.context.embedded.netty;
 
-import com.google.common.base.StandardSystemProperty;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollChannelOption;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.context.embedded.EmbeddedServletContainer;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerException;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * An {@link EmbeddedServletContainer} used to control an embedded Netty instance, that bridges to
@@ -41,82 +41,313 @@ import java.net.InetSocketAddress;
  * to Netty HTTP codec {@link io.netty.handler.codec.http.HttpMessage}s.
  * <p>
  * This is a minimal Servlet 3.1 implementation to provide for the opinionated embedded servlet container model for
- * Spring Boot, supporting a single context, runtime {@link javax.servlet.Registration} only, and no default or JSP
- * servlets.
+ * Spring Boot, supporting a single context, runtime {@link javax.servlet.Registration} only, and no JSP servlet.
  * <p>
  * This class should be created using the {@link NettyEmbeddedServletContainerFactory}.
  *
  * @author Danny Thomas
  */
 public class NettyEmbeddedServletContainer implements EmbeddedServletContainer {
+    private static final int DEFAULT_BACKLOG = 100;
+    private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+    private static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+
     private final Log logger = LogFactory.getLog(getClass());
     private final InetSocketAddress address;
     private final NettyEmbeddedContext context;
+    private final ServletExecutionStrategy servletExecutionStrategy;
+    private final AcceptCountingHandler acceptCountingHandler = new AcceptCountingHandler();
+    private final List<Channel> serverChannels = new ArrayList<>();
+    private int acceptors = 1;
+    private int backlog = DEFAULT_BACKLOG;
+    private NettyTransport transport;
+    private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+    private int maxInFlightRequests;
+    private long queueTimeoutMillis;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private Compression compression;
+    private long maxInflatedRequestSize;
+    private int writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+    private int writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+    private int inputBufferLowWaterMark = HttpContentInputStream.DEFAULT_LOW_WATER_MARK;
+    private int inputBufferHighWaterMark = HttpContentInputStream.DEFAULT_HIGH_WATER_MARK;
+    private long readTimeoutMillis = HttpContentInputStream.DEFAULT_READ_TIMEOUT_MILLIS;
+    private int readSpins;
+    private NettyEmbeddedServletInitializer initializer;
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private DefaultEventExecutorGroup servletExecutor;
 
     public NettyEmbeddedServletContainer(InetSocketAddress address, NettyEmbeddedContext context) {
+        this(address, context, new BoundedServletExecutionStrategy(50));
+    }
+
+    public NettyEmbeddedServletContainer(InetSocketAddress address, NettyEmbeddedContext context, ServletExecutionStrategy servletExecutionStrategy) {
         this.address = address;
         this.context = context;
+        this.servletExecutionStrategy = checkNotNull(servletExecutionStrategy);
     }
 
     @Override
     public void start() throws EmbeddedServletContainerException {
         ServerBootstrap b = new ServerBootstrap();
-        groups(b);
-        servletExecutor = new DefaultEventExecutorGroup(50);
-        b.childHandler(new NettyEmbeddedServletInitializer(servletExecutor, context));
+        boolean reusePort = groups(b);
+        servletExecutionStrategy.start(workerGroup);
+        context.getDateHeaderCache().start(workerGroup);
+        initializer = new NettyEmbeddedServletInitializer(servletExecutionStrategy, context, maxInFlightRequests, queueTimeoutMillis, concurrencyLimiter,
+                compression, maxInflatedRequestSize, inputBufferLowWaterMark, inputBufferHighWaterMark,
+                readTimeoutMillis, readSpins);
+        b.childHandler(initializer);
 
         // Don't yet need the complexity of lifecycle state, listeners etc, so tell the context it's initialised here
         context.setInitialised(true);
 
-        ChannelFuture future = b.bind(address).awaitUninterruptibly();
-        //noinspection ThrowableResultOfMethodCallIgnored
-        Throwable cause = future.cause();
-        if (null != cause) {
-            throw new EmbeddedServletContainerException("Could not start Netty server", cause);
+        // Each bind registers a new server channel with the next boss event loop, and with SO_REUSEPORT the kernel
+        // spreads incoming connections across them
+        int serverChannelCount = reusePort ? acceptors : 1;
+        for (int i = 0; i < serverChannelCount; i++) {
+            ChannelFuture future = b.bind(address).awaitUninterruptibly();
+            //noinspection ThrowableResultOfMethodCallIgnored
+            Throwable cause = future.cause();
+            if (null != cause) {
+                throw new EmbeddedServletContainerException("Could not start Netty server", cause);
+            }
+            serverChannels.add(future.channel());
         }
-        logger.info(context.getServerInfo() + " started on port: " + getPort());
+        logger.info(context.getServerInfo() + " started on port: " + getPort() + " with " + serverChannelCount + " acceptor(s)");
     }
 
-    private void groups(ServerBootstrap b) {
-        if (StandardSystemProperty.OS_NAME.value().equals("Linux")) {
-            bossGroup = new EpollEventLoopGroup(1);
-            workerGroup = new EpollEventLoopGroup();
-            b.channel(EpollServerSocketChannel.class)
-                    .group(bossGroup, workerGroup)
-                    .option(EpollChannelOption.TCP_CORK, true);
+    private boolean groups(ServerBootstrap b) {
+        if (null == transport) {
+            transport = NettyTransport.select();
+            logger.info("Selected " + transport + " transport");
+        } else if (!transport.isAvailable()) {
+            throw new EmbeddedServletContainerException("Configured " + transport + " transport is not available on this platform", null);
         } else {
-            bossGroup = new NioEventLoopGroup(1);
-            workerGroup = new NioEventLoopGroup();
-            b.channel(NioServerSocketChannel.class)
-                    .group(bossGroup, workerGroup);
+            logger.info("Using configured " + transport + " transport");
+        }
+        boolean reusePort = acceptors > 1 && transport.configureReusePort(b);
+        if (acceptors > 1 && !reusePort) {
+            logger.warn("Multiple acceptors require SO_REUSEPORT, which the " + transport + " transport does not support, using a single acceptor");
         }
+        bossGroup = transport.newEventLoopGroup(reusePort ? acceptors : 1);
+        workerGroup = transport.newEventLoopGroup(0);
+        b.channel(transport.serverChannelClass())
+                .group(bossGroup, workerGroup);
+        transport.configure(b);
         b.option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.SO_BACKLOG, 100);
+                .option(ChannelOption.SO_BACKLOG, backlog)
+                .handler(acceptCountingHandler);
+        // Each mark is validated against the other's current value, so the order they're set in matters
+        if (writeBufferLowWaterMark > DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK) {
+            b.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark)
+                    .childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark);
+        } else {
+            b.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark)
+                    .childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark);
+        }
         logger.info("Bootstrap configuration: " + b.toString());
+        return reusePort;
+    }
+
+    /**
+     * Set the transport to use. Defaults to the preferred transport available, see {@link NettyTransport#select()}.
+     */
+    public void setTransport(NettyTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Get the transport in use, or configured if the container hasn't been started.
+     */
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set the number of acceptors, each binding its own server channel with <code>SO_REUSEPORT</code> so the kernel
+     * distributes accepts between them. Only supported by the epoll and io_uring transports. Defaults to 1.
+     */
+    public void setAcceptors(int acceptors) {
+        checkArgument(acceptors > 0, "acceptors must be greater than zero");
+        this.acceptors = acceptors;
+    }
+
+    /**
+     * Set the <code>SO_BACKLOG</code> for server channels. Defaults to 100.
+     */
+    public void setBacklog(int backlog) {
+        checkArgument(backlog > 0, "backlog must be greater than zero");
+        this.backlog = backlog;
+    }
+
+    /**
+     * Get the number of connections accepted by each acceptor, to check how evenly accepts are being distributed.
+     */
+    public List<Long> getAcceptCounts() {
+        return acceptCountingHandler.getAcceptCounts();
+    }
+
+    /**
+     * Set the maximum time to wait for in-flight requests to complete when stopping. Defaults to 30 seconds.
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        checkArgument(drainTimeoutMillis >= 0, "drainTimeoutMillis must not be negative");
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * Set the number of in-flight requests, executing or waiting for the servlet executor, above which new requests are
+     * rejected on the event loop with a <code>503</code>. Defaults to 0, for no limit.
+     */
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        checkArgument(maxInFlightRequests >= 0, "maxInFlightRequests must not be negative");
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    /**
+     * Set the maximum time a request may wait for the servlet executor, after which it's rejected with a
+     * <code>503</code> rather than being serviced. Defaults to 0, for no limit.
+     */
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        checkArgument(queueTimeoutMillis >= 0, "queueTimeoutMillis must not be negative");
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * Set an {@link AdaptiveConcurrencyLimiter} to limit in-flight requests based on observed latency. Defaults to
+     * null, for no adaptive limit.
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Set the response compression configuration. Defaults to null, for no compression.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Set the largest size a <code>gzip</code> or <code>deflate</code> encoded request body may inflate to. Such bodies
+     * are inflated before they're read by servlets, and connections whose bodies exceed the limit are closed. Defaults
+     * to 0, where request bodies are passed to servlets as they were sent.
+     */
+    public void setMaxInflatedRequestSize(long maxInflatedRequestSize) {
+        checkArgument(maxInflatedRequestSize >= 0, "maxInflatedRequestSize must not be negative");
+        this.maxInflatedRequestSize = maxInflatedRequestSize;
+    }
+
+    /**
+     * Get the adaptive concurrency limiter, to export its limit, latency estimates and rejections as metrics.
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Set the write buffer water marks for connections. Once more than the high water mark of response data is waiting
+     * to be written to a client, blocking writers are parked and {@link javax.servlet.ServletOutputStream#isReady()}
+     * returns false, until the client has read enough for it to fall below the low water mark. Defaults to 32KB and
+     * 64KB.
+     */
+    public void setWriteBufferWaterMarks(int low, int high) {
+        checkArgument(low >= 0, "low must not be negative");
+        checkArgument(high >= low, "high must be at least low");
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+    }
+
+    /**
+     * Set the input buffer water marks for connections. Once more than the high water mark of request body data is
+     * waiting to be read by a servlet, the connection stops reading from the client, until the servlet has read enough
+     * for it to fall below the low water mark. Defaults to 32KB and 64KB.
+     */
+    public void setInputBufferWaterMarks(int low, int high) {
+        checkArgument(low >= 0, "low must not be negative");
+        checkArgument(high >= low, "high must be at least low");
+        this.inputBufferLowWaterMark = low;
+        this.inputBufferHighWaterMark = high;
+    }
+
+    /**
+     * Set the maximum time a servlet's blocking read waits for request body content, after which the read fails with a
+     * {@link java.net.SocketTimeoutException}. Defaults to 60 seconds, or 0 for no limit.
+     */
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        checkArgument(readTimeoutMillis >= 0, "readTimeoutMillis must not be negative");
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Set the number of times a servlet's blocking read polls for request body content before parking. Spinning
+     * trades CPU for lower latency when content arrives in quick succession. Defaults to 0, to park immediately.
+     */
+    public void setReadSpins(int readSpins) {
+        checkArgument(readSpins >= 0, "readSpins must not be negative");
+        this.readSpins = readSpins;
+    }
+
+    /**
+     * Get the number of requests rejected because too many requests were in-flight.
+     */
+    public long getRejectedRequests() {
+        return null == initializer ? 0 : initializer.getRejectedRequests();
     }
 
     @Override
     public void stop() throws EmbeddedServletContainerException {
+        if (serverChannels.size() > 1) {
+            logger.info("Connections accepted per acceptor: " + getAcceptCounts());
+        }
         try {
+            drain();
+            context.getDateHeaderCache().stop();
             if (null != bossGroup) {
                 bossGroup.shutdownGracefully().await();
             }
             if (null != workerGroup) {
                 workerGroup.shutdownGracefully().await();
             }
-            if (null != servletExecutor) {
-                servletExecutor.shutdownGracefully().await();
+            servletExecutionStrategy.stop();
+            StaticResourceCache staticResourceCache = context.getStaticResourceCache();
+            if (null != staticResourceCache) {
+                // Release the cached buffers
+                staticResourceCache.invalidateAll();
             }
         } catch (InterruptedException e) {
             throw new EmbeddedServletContainerException("Container stop interrupted", e);
         }
     }
 
+    /**
+     * Stop accepting connections, and wait for in-flight requests to complete. Idle keep-alive connections are closed,
+     * and responses committed while draining close their connection, so keep-alive clients reconnect to another
+     * instance.
+     */
+    private void drain() throws InterruptedException {
+        InFlightRequestTracker requestTracker = context.getRequestTracker();
+        requestTracker.startDraining();
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().await();
+        }
+        serverChannels.clear();
+        if (null != initializer) {
+            initializer.closeIdleConnections();
+        }
+        int inFlight = requestTracker.getInFlight();
+        if (inFlight > 0) {
+            logger.info("Waiting up to " + drainTimeoutMillis + "ms for " + inFlight + " in-flight request(s) to complete");
+        }
+        int cutOff = requestTracker.awaitCompletion(drainTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (cutOff > 0) {
+            logger.warn(cutOff + " in-flight request(s) did not complete within " + drainTimeoutMillis + "ms and will be cut off");
+        }
+    }
+
     @Override
     public int getPort() {
         return address.getPort();
@@ -24,6 +24,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplicat
 import org.springframework.boot.autoconfigure.condition.SearchStrategy;
 import org.springframework.boot.autoconfigure.web.EmbeddedServletContainerAutoConfiguration.EmbeddedServletContainerCustomizerBeanPostProcessorRegistrar;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -42,11 +44,20 @@ import org.springframework.core.annotation.Order;
 public class NettyEmbeddedServletContainerAutoConfiguration {
     @Configuration
     @ConditionalOnClass({Bootstrap.class})
+    @EnableConfigurationProperties
     @ConditionalOnMissingBean(value = EmbeddedServletContainerFactory.class, search = SearchStrategy.CURRENT)
     public static class EmbeddedNetty {
         @Bean
-        public NettyEmbeddedServletContainerFactory nettyEmbeddedServletContainerFactory() {
-            return new NettyEmbeddedServletContainerFactory();
+        @ConfigurationProperties(prefix = "netty.compression")
+        public Compression nettyCompression() {
+            return new Compression();
+        }
+
+        @Bean
+        public NettyEmbeddedServletContainerFactory nettyEmbeddedServletContainerFactory(Compression nettyCompression) {
+            NettyEmbeddedServletContainerFactory factory = new NettyEmbeddedServletContainerFactory();
+            factory.setCompression(nettyCompression);
+            return factory;
         }
     }
 }
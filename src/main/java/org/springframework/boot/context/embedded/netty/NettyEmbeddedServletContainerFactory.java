@@ -21,6 +21,7 @@ import io.netty.bootstrap.Bootstrap;
 import org.springframework.boot.context.embedded.AbstractEmbeddedServletContainerFactory;
 import org.springframework.boot.context.embedded.EmbeddedServletContainer;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerFactory;
+import org.springframework.boot.context.embedded.MimeMappings;
 import org.springframework.boot.context.embedded.ServletContextInitializer;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.core.io.ResourceLoader;
@@ -31,6 +32,9 @@ import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * An {@link EmbeddedServletContainerFactory} that can be used to create {@link NettyEmbeddedServletContainer}s.
@@ -39,7 +43,26 @@ import java.util.Random;
  */
 public class NettyEmbeddedServletContainerFactory extends AbstractEmbeddedServletContainerFactory implements ResourceLoaderAware {
     public static final String SERVER_INFO = "netty/servlet";
+    private static final int DEFAULT_SERVLET_THREADS = 50;
+
     private ResourceLoader resourceLoader;
+    private ServletExecutionStrategy servletExecutionStrategy = new BoundedServletExecutionStrategy(DEFAULT_SERVLET_THREADS);
+    private int acceptors = 1;
+    private int backlog = 100;
+    private NettyTransport transport;
+    private long drainTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private int maxInFlightRequests;
+    private long queueTimeoutMillis;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    private int inputBufferLowWaterMark = 32 * 1024;
+    private int inputBufferHighWaterMark = 64 * 1024;
+    private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(60);
+    private int readSpins;
+    private StaticResourceCache staticResourceCache = new StaticResourceCache();
+    private Compression compression;
+    private long maxInflatedRequestSize;
 
     @Override
     public EmbeddedServletContainer getEmbeddedServletContainer(ServletContextInitializer... initializers) {
@@ -49,8 +72,18 @@ public class NettyEmbeddedServletContainerFactory extends AbstractEmbeddedServle
         String version = nettyPackage.getImplementationVersion();
         logger.info("Running with " + title + " " + version);
         NettyEmbeddedContext context = new NettyEmbeddedContext(getContextPath(), new URLClassLoader(new URL[]{}, parentClassLoader), SERVER_INFO);
+        context.setDocumentRoot(getValidDocumentRoot());
+        if (null != staticResourceCache) {
+            // Cached resources hold compressed variants by the same rules as responses are compressed
+            staticResourceCache.setCompressionPolicy(CompressionPolicy.of(compression));
+        }
+        context.setStaticResourceCache(staticResourceCache);
+        for (MimeMappings.Mapping mapping : getMimeMappings()) {
+            context.addMimeMapping(mapping.getExtension(), mapping.getMimeType());
+        }
         if (isRegisterDefaultServlet()) {
-            logger.warn("This container does not support a default servlet");
+            // Registered ahead of the initializers, so a servlet they map to "/" takes precedence
+            context.addServlet(NettyDefaultServlet.NAME, new NettyDefaultServlet()).addMapping("/");
         }
         if (isRegisterJspServlet()) {
             logger.warn("This container does not support a JSP servlet");
@@ -65,7 +98,215 @@ public class NettyEmbeddedServletContainerFactory extends AbstractEmbeddedServle
         int port = getPort() > 0 ? getPort() : new Random().nextInt(65535 - 1024) + 1024;
         InetSocketAddress address = new InetSocketAddress(port);
         logger.info("Server initialized with port: " + port);
-        return new NettyEmbeddedServletContainer(address, context);
+        NettyEmbeddedServletContainer container = new NettyEmbeddedServletContainer(address, context, servletExecutionStrategy);
+        container.setAcceptors(acceptors);
+        container.setBacklog(backlog);
+        container.setTransport(transport);
+        container.setDrainTimeoutMillis(drainTimeoutMillis);
+        container.setMaxInFlightRequests(maxInFlightRequests);
+        container.setQueueTimeoutMillis(queueTimeoutMillis);
+        container.setConcurrencyLimiter(concurrencyLimiter);
+        container.setWriteBufferWaterMarks(writeBufferLowWaterMark, writeBufferHighWaterMark);
+        container.setInputBufferWaterMarks(inputBufferLowWaterMark, inputBufferHighWaterMark);
+        container.setReadTimeoutMillis(readTimeoutMillis);
+        container.setReadSpins(readSpins);
+        container.setCompression(compression);
+        container.setMaxInflatedRequestSize(maxInflatedRequestSize);
+        return container;
+    }
+
+    /**
+     * Set the {@link ServletExecutionStrategy} used to execute requests. Defaults to a
+     * {@link BoundedServletExecutionStrategy} with 50 threads.
+     */
+    public void setServletExecutionStrategy(ServletExecutionStrategy servletExecutionStrategy) {
+        this.servletExecutionStrategy = checkNotNull(servletExecutionStrategy);
+    }
+
+    public ServletExecutionStrategy getServletExecutionStrategy() {
+        return servletExecutionStrategy;
+    }
+
+    /**
+     * Set the number of acceptors binding the server port with <code>SO_REUSEPORT</code>, with native transports.
+     * Defaults to 1.
+     *
+     * @see NettyEmbeddedServletContainer#setAcceptors(int)
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * Set the <code>SO_BACKLOG</code> for server channels. Defaults to 100.
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the transport to use. Defaults to null, selecting the preferred transport available at startup: io_uring,
+     * then epoll, then NIO.
+     */
+    public void setTransport(NettyTransport transport) {
+        this.transport = transport;
+    }
+
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set the maximum time to wait for in-flight requests to complete when the container is stopped. Defaults to 30
+     * seconds.
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * Set the number of in-flight requests above which new requests are rejected with a <code>503</code>. Defaults to
+     * 0, for no limit.
+     *
+     * @see NettyEmbeddedServletContainer#setMaxInFlightRequests(int)
+     */
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Set the maximum time a request may wait for the servlet executor before being rejected with a <code>503</code>.
+     * Defaults to 0, for no limit.
+     */
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    public long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    /**
+     * Set an {@link AdaptiveConcurrencyLimiter} to limit in-flight requests based on observed latency. Defaults to
+     * null, for no adaptive limit.
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Set the write buffer water marks, bounding the response data held for each slow client. Defaults to 32KB and
+     * 64KB.
+     */
+    public void setWriteBufferWaterMarks(int low, int high) {
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * Set the input buffer water marks, bounding the request body data held for each slow servlet. Defaults to 32KB
+     * and 64KB.
+     */
+    public void setInputBufferWaterMarks(int low, int high) {
+        this.inputBufferLowWaterMark = low;
+        this.inputBufferHighWaterMark = high;
+    }
+
+    public int getInputBufferLowWaterMark() {
+        return inputBufferLowWaterMark;
+    }
+
+    public int getInputBufferHighWaterMark() {
+        return inputBufferHighWaterMark;
+    }
+
+    /**
+     * Set the maximum time a servlet's blocking read waits for request body content. Defaults to 60 seconds, or 0 for
+     * no limit.
+     */
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Set the number of times a servlet's blocking read polls for request body content before parking. Defaults to 0.
+     */
+    public void setReadSpins(int readSpins) {
+        this.readSpins = readSpins;
+    }
+
+    public int getReadSpins() {
+        return readSpins;
+    }
+
+    /**
+     * Set the cache for small static resources served by the default servlet, or null to always read them from their
+     * file or jar. Defaults to a {@link StaticResourceCache} holding up to 16MB of resources of up to 64KB each.
+     */
+    public void setStaticResourceCache(StaticResourceCache staticResourceCache) {
+        this.staticResourceCache = staticResourceCache;
+    }
+
+    /**
+     * Get the static resource cache, to export its hit, miss and eviction counts as metrics.
+     */
+    public StaticResourceCache getStaticResourceCache() {
+        return staticResourceCache;
+    }
+
+    /**
+     * Set the response compression configuration. Defaults to null, for no compression.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the largest size a <code>gzip</code> or <code>deflate</code> encoded request body may inflate to, or 0, the
+     * default, to pass request bodies to servlets as they were sent.
+     */
+    public void setMaxInflatedRequestSize(long maxInflatedRequestSize) {
+        this.maxInflatedRequestSize = maxInflatedRequestSize;
+    }
+
+    public long getMaxInflatedRequestSize() {
+        return maxInflatedRequestSize;
     }
 
     @Override
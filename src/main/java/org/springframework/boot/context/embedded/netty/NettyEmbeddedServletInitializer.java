@@ -21,7 +21,8 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.concurrent.Executor;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -31,21 +32,80 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @author Danny Thomas
  */
 class NettyEmbeddedServletInitializer extends ChannelInitializer<SocketChannel> {
-    private final EventExecutorGroup servletExecutor;
+    private final ServletExecutionStrategy servletExecutionStrategy;
     private final RequestDispatcherHandler requestDispatcherHandler;
+    private final AdmissionControlHandler admissionControlHandler;
     private final NettyEmbeddedContext servletContext;
+    private final CompressionPolicy compressionPolicy;
+    private final long maxInflatedRequestSize;
+    private final int inputBufferLowWaterMark;
+    private final int inputBufferHighWaterMark;
+    private final long readTimeoutMillis;
+    private final int readSpins;
 
-    NettyEmbeddedServletInitializer(EventExecutorGroup servletExecutor, NettyEmbeddedContext servletContext) {
+    /**
+     * @param maxInFlightRequests the number of in-flight requests before requests are rejected, or 0 for no limit
+     * @param queueTimeoutMillis  the maximum time a request may wait for the servlet executor, or 0 for no limit
+     * @param concurrencyLimiter  the adaptive concurrency limiter, or null for none
+     * @param compression         the response compression configuration, or null for none
+     * @param maxInflatedRequestSize the largest size a compressed request body may inflate to, or 0 to not inflate
+     *                               request bodies
+     * @param inputBufferLowWaterMark  the number of request body bytes queued for a servlet at or below which reading
+     *                                 from the channel is resumed
+     * @param inputBufferHighWaterMark the number of request body bytes queued for a servlet above which reading from
+     *                                 the channel is suspended
+     * @param readTimeoutMillis        the maximum time a servlet's blocking read waits for content, or 0 for no limit
+     * @param readSpins                the number of times a servlet's blocking read polls for content before parking
+     */
+    NettyEmbeddedServletInitializer(ServletExecutionStrategy servletExecutionStrategy, NettyEmbeddedContext servletContext,
+                                    int maxInFlightRequests, long queueTimeoutMillis, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                    Compression compression, long maxInflatedRequestSize,
+                                    int inputBufferLowWaterMark, int inputBufferHighWaterMark, long readTimeoutMillis,
+                                    int readSpins) {
         this.servletContext = servletContext;
-        this.servletExecutor = checkNotNull(servletExecutor);
-        requestDispatcherHandler = new RequestDispatcherHandler(servletContext);
+        this.maxInflatedRequestSize = maxInflatedRequestSize;
+        this.inputBufferLowWaterMark = inputBufferLowWaterMark;
+        this.inputBufferHighWaterMark = inputBufferHighWaterMark;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.readSpins = readSpins;
+        this.servletExecutionStrategy = checkNotNull(servletExecutionStrategy);
+        requestDispatcherHandler = new RequestDispatcherHandler(servletContext, queueTimeoutMillis);
+        boolean admissionControl = maxInFlightRequests > 0 || null != concurrencyLimiter;
+        admissionControlHandler = admissionControl ? new AdmissionControlHandler(servletContext, maxInFlightRequests, concurrencyLimiter) : null;
+        compressionPolicy = CompressionPolicy.of(compression);
     }
 
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
         ChannelPipeline p = ch.pipeline();
+        p.addLast("flushConsolidation", new FlushConsolidationHandler());
         p.addLast("codec", new HttpServerCodec(4096, 8192, 8192, false));
-        p.addLast("servletInput", new ServletContentHandler(servletContext));
-        p.addLast(servletExecutor, "filterChain", requestDispatcherHandler);
+        if (maxInflatedRequestSize > 0) {
+            p.addLast("decompression", new RequestDecompressionHandler(maxInflatedRequestSize));
+        }
+        if (null != compressionPolicy) {
+            p.addLast("compression", new ResponseCompressionHandler(compressionPolicy));
+        }
+        Executor servletExecutor = servletExecutionStrategy.executor(ch);
+        p.addLast("servletInput", new ServletContentHandler(servletContext, servletExecutor, inputBufferLowWaterMark, inputBufferHighWaterMark,
+                readTimeoutMillis, readSpins));
+        if (null != admissionControlHandler) {
+            p.addLast("admissionControl", admissionControlHandler);
+        }
+        p.addLast("filterChain", requestDispatcherHandler);
+    }
+
+    /**
+     * Close connections that have no requests in progress.
+     */
+    void closeIdleConnections() {
+        requestDispatcherHandler.closeIdleConnections();
+    }
+
+    /**
+     * Get the number of requests rejected by admission control.
+     */
+    long getRejectedRequests() {
+        return null == admissionControlHandler ? 0 : admissionControlHandler.getRejectedRequests();
     }
 }
@@ -18,6 +18,7 @@
 package org.springframework.boot.context.embedded.netty;
 
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 
 import javax.servlet.*;
@@ -26,7 +27,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
+import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * {@link HttpServletRequest} wrapper for Netty's {@link HttpRequest}.
@@ -41,24 +44,41 @@ class NettyHttpServletRequest implements HttpServletRequest {
     private final HttpRequest request;
     private final ServletInputStream inputStream;
     private final Map<String, Object> attributes;
+    private final Executor servletExecutor;
+    private final long receivedNanos = System.nanoTime();
 
     private boolean asyncSupported = true;
     private NettyAsyncContext asyncContext;
     private HttpServletResponse servletResponse;
 
-    NettyHttpServletRequest(ChannelHandlerContext ctx, NettyEmbeddedContext servletContext, HttpRequest request, HttpServletResponse servletResponse, ServletInputStream inputStream) {
+    NettyHttpServletRequest(ChannelHandlerContext ctx, NettyEmbeddedContext servletContext, HttpRequest request, HttpServletResponse servletResponse, ServletInputStream inputStream, Executor servletExecutor) {
         this.ctx = ctx;
         this.servletContext = servletContext;
         this.request = request;
         this.servletResponse = servletResponse;
         this.inputStream = inputStream;
         this.attributes = new HashMap<>();
+        this.servletExecutor = servletExecutor;
     }
 
     HttpRequest getNettyRequest() {
         return request;
     }
 
+    /**
+     * Get the {@link Executor} that filters and servlets for this request are executed on.
+     */
+    Executor getServletExecutor() {
+        return servletExecutor;
+    }
+
+    /**
+     * Get the {@link System#nanoTime()} when the request was received.
+     */
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
     @Override
     public String getAuthType() {
         return null;
@@ -71,12 +91,19 @@ class NettyHttpServletRequest implements HttpServletRequest {
 
     @Override
     public long getDateHeader(String name) {
-        return 0;
+        if (!request.headers().contains(name)) {
+            return -1;
+        }
+        try {
+            return HttpHeaders.getDateHeader(request, name).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Header " + name + " is not a date", e);
+        }
     }
 
     @Override
     public String getHeader(String name) {
-        return null;
+        return request.headers().get(name);
     }
 
     @Override
@@ -411,7 +438,7 @@ class NettyHttpServletRequest implements HttpServletRequest {
     @Override
     public AsyncContext getAsyncContext() {
         if (null == asyncContext) {
-            asyncContext = new NettyAsyncContext(this, ctx);
+            asyncContext = new NettyAsyncContext(this, servletExecutor);
         }
         return asyncContext;
     }
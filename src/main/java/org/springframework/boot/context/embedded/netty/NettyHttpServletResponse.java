@@ -19,23 +19,23 @@ package org.springframework.boot.context.embedded.netty;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
-import com.google.common.base.Optional;
-import com.google.common.net.MediaType;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.util.concurrent.FastThreadLocal;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -45,17 +45,11 @@ import static com.google.common.base.Preconditions.checkState;
  * @author Danny Thomas
  */
 class NettyHttpServletResponse implements HttpServletResponse {
-    private static final FastThreadLocal<DateFormat> FORMAT = new FastThreadLocal<DateFormat>() {
-        @Override
-        protected DateFormat initialValue() {
-            return new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss z");
-        }
-    };
-
     private static final Locale DEFAULT_LOCALE = Locale.getDefault();
     private static final String DEFAULT_CHARACTER_ENCODING = Charsets.ISO_8859_1.name();
 
     private final NettyEmbeddedContext servletContext;
+    private final AtomicBoolean completed = new AtomicBoolean();
     private HttpResponse response;
     private HttpResponseOutputStream outputStream;
     private boolean usingOutputStream;
@@ -65,11 +59,16 @@ class NettyHttpServletResponse implements HttpServletResponse {
     private String contentType;
     private String characterEncoding = DEFAULT_CHARACTER_ENCODING;
     private Locale locale;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private long concurrencyLimiterStartNanos;
+    private HttpContentInputStream requestInputStream;
+    private HttpServletRequest servletRequest;
 
-    NettyHttpServletResponse(ChannelHandlerContext ctx, NettyEmbeddedContext servletContext, HttpResponse response) {
+    NettyHttpServletResponse(ChannelHandlerContext ctx, NettyEmbeddedContext servletContext, HttpResponse response,
+                             ChannelWritabilityMonitor writabilityMonitor) {
         this.servletContext = servletContext;
         this.response = response;
-        this.outputStream = new HttpResponseOutputStream(ctx, this);
+        this.outputStream = new HttpResponseOutputStream(ctx, this, writabilityMonitor);
         cookies = new ArrayList<>();
     }
 
@@ -81,10 +80,13 @@ class NettyHttpServletResponse implements HttpServletResponse {
             return response;
         }
         committed = true;
+        if (servletContext.getRequestTracker().isDraining()) {
+            // Ask clients to reconnect elsewhere, so the connection can be closed once this response is written
+            HttpHeaders.setKeepAlive(response, false);
+        }
         HttpHeaders headers = response.headers();
         if (null != contentType) {
-            String value = null == characterEncoding ? contentType : contentType + "; charset=" + characterEncoding;
-            headers.set(HttpHeaders.Names.CONTENT_TYPE, value);
+            headers.set(HttpHeaders.Names.CONTENT_TYPE, servletContext.getContentTypeCache().getHeaderValue(contentType, characterEncoding));
         }
         CharSequence date = getFormattedDate();
         headers.set(HttpHeaders.Names.DATE, date);
@@ -93,9 +95,65 @@ class NettyHttpServletResponse implements HttpServletResponse {
         return response;
     }
 
+    /**
+     * Called once the response has been completely written, or abandoned. Only the first call has any effect, as a
+     * response is abandoned when its channel closes, even if the servlet is still writing it.
+     */
+    void responseCompleted() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        servletContext.getRequestTracker().requestCompleted();
+        if (null != concurrencyLimiter) {
+            concurrencyLimiter.release(concurrencyLimiterStartNanos);
+            concurrencyLimiter = null;
+        }
+        if (null != requestInputStream) {
+            requestInputStream.discardRemaining();
+        }
+    }
+
+    boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Set the limiter the request holds a permit for, to be released when the response completes.
+     */
+    void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter, long startNanos) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.concurrencyLimiterStartNanos = startNanos;
+    }
+
+    /**
+     * Set the input stream of the associated request, so any of its body the servlet didn't read is discarded when the
+     * response completes.
+     */
+    void setRequestInputStream(HttpContentInputStream requestInputStream) {
+        this.requestInputStream = requestInputStream;
+    }
+
+    /**
+     * Set the request this is the response to, so non-blocking output can check the request is async.
+     */
+    void setServletRequest(HttpServletRequest servletRequest) {
+        this.servletRequest = servletRequest;
+    }
+
+    boolean isAsyncStarted() {
+        return null != servletRequest && servletRequest.isAsyncStarted();
+    }
+
+    /**
+     * Abandon the response without writing any further content, when the connection is being closed due to an error.
+     */
+    void abort() {
+        outputStream.abort();
+    }
+
     @VisibleForTesting
     CharSequence getFormattedDate() {
-        return HttpHeaders.newEntity(FORMAT.get().format(new Date()));
+        return servletContext.getDateHeaderCache().get();
     }
 
     @Override
@@ -148,12 +206,12 @@ class NettyHttpServletResponse implements HttpServletResponse {
 
     @Override
     public void setDateHeader(String name, long date) {
-        response.headers().set(name, date);
+        HttpHeaders.setDateHeader(response, name, new Date(date));
     }
 
     @Override
     public void addDateHeader(String name, long date) {
-        response.headers().add(name, date);
+        HttpHeaders.addDateHeader(response, name, new Date(date));
     }
 
     @Override
@@ -246,11 +304,22 @@ class NettyHttpServletResponse implements HttpServletResponse {
     public PrintWriter getWriter() throws IOException {
         checkState(!usingOutputStream, "getOutputStream has already been called for this response");
         if (!hasWriter()) {
-            writer = new PrintWriter(outputStream);
+            writer = new PrintWriter(new HttpResponseWriter(outputStream, getCharset()));
         }
         return writer;
     }
 
+    private Charset getCharset() throws UnsupportedEncodingException {
+        if (null == characterEncoding) {
+            return Charsets.ISO_8859_1;
+        }
+        try {
+            return Charset.forName(characterEncoding);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(characterEncoding);
+        }
+    }
+
     @Override
     public void setCharacterEncoding(String charset) {
         if (hasWriter()) {
@@ -271,12 +340,11 @@ class NettyHttpServletResponse implements HttpServletResponse {
             contentType = null;
             return;
         }
-        MediaType mediaType = MediaType.parse(type);
-        Optional<Charset> charset = mediaType.charset();
-        if (charset.isPresent()) {
-            setCharacterEncoding(charset.get().name());
+        ContentTypeCache.ContentType parsed = servletContext.getContentTypeCache().get(type);
+        if (null != parsed.getCharset()) {
+            setCharacterEncoding(parsed.getCharset());
         }
-        contentType = mediaType.type() + '/' + mediaType.subtype();
+        contentType = parsed.getMediaType();
     }
 
     private boolean hasWriter() {
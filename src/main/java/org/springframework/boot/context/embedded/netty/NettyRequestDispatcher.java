@@ -20,6 +20,8 @@ package org.springframework.boot.context.embedded.netty;
 import javax.servlet.*;
 import java.io.IOException;
 
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * @author Danny Thomas
  */
@@ -35,7 +37,10 @@ class NettyRequestDispatcher implements RequestDispatcher {
     @Override
     public void forward(ServletRequest request, ServletResponse response) throws ServletException, IOException {
         request.setAttribute(NettyHttpServletRequest.DISPATCHER_TYPE, DispatcherType.FORWARD);
-        // TODO implement
+        checkState(!response.isCommitted(), "Cannot forward after response has been committed");
+        response.resetBuffer();
+        // TODO forward request attributes
+        filterChain.doFilter(request, response);
     }
 
     @Override
@@ -29,6 +29,7 @@ import java.util.Set;
  */
 class NettyServletRegistration extends AbstractNettyRegistration implements ServletRegistration.Dynamic {
     private volatile boolean initialised;
+    private volatile Boolean nonBlocking;
     private Servlet servlet;
 
     NettyServletRegistration(NettyEmbeddedContext context, String servletName, String className, Servlet servlet) {
@@ -55,6 +56,27 @@ class NettyServletRegistration extends AbstractNettyRegistration implements Serv
         return servlet;
     }
 
+    /**
+     * Is the servlet non-blocking, either by annotation with {@link NonBlockingServlet}, or by the
+     * {@link NonBlockingServlet#INIT_PARAMETER} init parameter. Doesn't initialise the servlet.
+     */
+    boolean isNonBlocking() {
+        if (null == nonBlocking) {
+            boolean annotated;
+            if (null != servlet) {
+                annotated = servlet.getClass().isAnnotationPresent(NonBlockingServlet.class);
+            } else {
+                try {
+                    annotated = Class.forName(getClassName()).isAnnotationPresent(NonBlockingServlet.class);
+                } catch (ClassNotFoundException e) {
+                    annotated = false;
+                }
+            }
+            nonBlocking = annotated || Boolean.parseBoolean(getInitParameter(NonBlockingServlet.INIT_PARAMETER));
+        }
+        return nonBlocking;
+    }
+
     @Override
     public void setLoadOnStartup(int loadOnStartup) {
 
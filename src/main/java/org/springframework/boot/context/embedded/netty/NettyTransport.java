@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * The Netty transports supported by {@link NettyEmbeddedServletContainer}, in order of preference.
+ * <p>
+ * Native transports are probed at runtime, so a transport is only used when its native library can be loaded on
+ * the current platform. io_uring is provided by the separate <code>netty-incubator-transport-native-io_uring</code>
+ * artifact, so it's accessed reflectively and is only available when that artifact is on the classpath.
+ *
+ * @author Danny Thomas
+ */
+public enum NettyTransport {
+    IO_URING {
+        private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+        @Override
+        public boolean isAvailable() {
+            try {
+                return (Boolean) Class.forName(PACKAGE + "IOUring").getMethod("isAvailable").invoke(null);
+            } catch (Exception | LinkageError e) {
+                return false;
+            }
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            try {
+                return (EventLoopGroup) Class.forName(PACKAGE + "IOUringEventLoopGroup").getConstructor(int.class).newInstance(threads);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create io_uring event loop group", e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Class<? extends ServerChannel> serverChannelClass() {
+            try {
+                return (Class<? extends ServerChannel>) Class.forName(PACKAGE + "IOUringServerSocketChannel");
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Could not load io_uring server channel", e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        boolean configureReusePort(ServerBootstrap b) {
+            try {
+                ChannelOption<Boolean> option = (ChannelOption<Boolean>) Class.forName(PACKAGE + "IOUringChannelOption").getField("SO_REUSEPORT").get(null);
+                b.option(option, true);
+                return true;
+            } catch (ReflectiveOperationException e) {
+                return false;
+            }
+        }
+    },
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        void configure(ServerBootstrap b) {
+            b.option(EpollChannelOption.TCP_CORK, true);
+        }
+
+        @Override
+        boolean configureReusePort(ServerBootstrap b) {
+            b.option(EpollChannelOption.SO_REUSEPORT, true);
+            return true;
+        }
+    },
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+    };
+
+    /**
+     * Is the transport usable on this platform.
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Create an {@link EventLoopGroup} for the transport.
+     *
+     * @param threads the number of threads, or 0 for Netty's default
+     */
+    abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * Apply transport specific server options.
+     */
+    void configure(ServerBootstrap b) {
+    }
+
+    /**
+     * Enable <code>SO_REUSEPORT</code> on server channels.
+     *
+     * @return true if the transport supports <code>SO_REUSEPORT</code>
+     */
+    boolean configureReusePort(ServerBootstrap b) {
+        return false;
+    }
+
+    /**
+     * Select the preferred transport available on this platform.
+     */
+    public static NettyTransport select() {
+        for (NettyTransport transport : values()) {
+            if (transport.isAvailable()) {
+                return transport;
+            }
+        }
+        throw new IllegalStateException("No transport is available");
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a {@link javax.servlet.Servlet} as never blocking, so requests mapped to it are executed inline on the
+ * channel's event loop rather than being handed off to the servlet executor.
+ * <p>
+ * Equivalent to setting the {@link #INIT_PARAMETER} init parameter to <code>true</code> on the servlet's
+ * registration. Filters in the chain are executed on the event loop too, so they must not block either. Blocking
+ * reads from the request input stream fail when executed on the event loop, and requests that take longer than
+ * expected are logged.
+ *
+ * @author Danny Thomas
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NonBlockingServlet {
+    /**
+     * Servlet init parameter that marks a servlet as non-blocking when set to <code>true</code>.
+     */
+    String INIT_PARAMETER = "org.springframework.boot.context.embedded.netty.nonBlocking";
+}
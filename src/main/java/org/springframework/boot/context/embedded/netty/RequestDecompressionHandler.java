@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A per-channel {@link io.netty.channel.ChannelHandler} that inflates request bodies with a <code>gzip</code> or
+ * <code>deflate</code> <code>Content-Encoding</code>, so servlets read a plain stream. Bodies with other encodings are
+ * passed on unchanged.
+ * <p>
+ * Compressed content is inflated by Netty's zlib decoders, at most {@value #MAX_INPUT_PER_STEP} compressed bytes at a
+ * time. Deflate can't expand its input by much more than a thousand times, so that bounds what a single step can
+ * allocate. Between steps, inflation stops while the servlet input has suspended reading because it's above its high
+ * water mark, and picks up again when reading is resumed. Messages read in the meantime are held, so they're passed on
+ * in order. A body that inflates to more than the configured maximum is treated as hostile, and its connection is
+ * closed without inflating any more of it.
+ *
+ * @author Danny Thomas
+ */
+class RequestDecompressionHandler extends ChannelDuplexHandler {
+    static final int MAX_INPUT_PER_STEP = 1024;
+
+    private final Log logger = LogFactory.getLog(getClass());
+    private final long maxInflatedSize;
+    // Messages not yet passed on, the first of which may be compressed content that's partly inflated
+    private final Deque<Object> backlog = new ArrayDeque<>();
+    private EmbeddedChannel decoder;
+    private long inflatedSize;
+    private boolean draining;
+
+    /**
+     * @param maxInflatedSize the largest size a request body may inflate to
+     */
+    RequestDecompressionHandler(long maxInflatedSize) {
+        checkArgument(maxInflatedSize > 0, "maxInflatedSize must be greater than zero");
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        backlog.add(msg);
+        drain(ctx);
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        // Reading is resumed once the servlet input has drained, so inflate what's held before reading more
+        drain(ctx);
+        ctx.read();
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        if (draining) {
+            // A servlet running on the event loop resumed reading, and the loop below carries on
+            return;
+        }
+        draining = true;
+        try {
+            drainBacklog(ctx);
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void drainBacklog(ChannelHandlerContext ctx) {
+        Object msg;
+        while (null != (msg = backlog.peek())) {
+            if (null != decoder && msg instanceof HttpContent) {
+                if (!ctx.channel().config().isAutoRead()) {
+                    // The servlet input is above its high water mark
+                    return;
+                }
+                HttpContent content = (HttpContent) msg;
+                if (!inflate(ctx, content.content())) {
+                    return;
+                }
+                if (content.content().isReadable()) {
+                    continue;
+                }
+                backlog.poll();
+                try {
+                    if (content instanceof LastHttpContent && !finishDecoder(ctx, (LastHttpContent) content)) {
+                        return;
+                    }
+                } finally {
+                    content.release();
+                }
+            } else {
+                backlog.poll();
+                if (msg instanceof HttpRequest) {
+                    // The codec delivers the request and its content as separate messages
+                    destroyDecoder();
+                    startDecoder((HttpRequest) msg);
+                    ctx.fireChannelRead(msg);
+                } else if (msg instanceof HttpContent && !ctx.channel().isOpen()) {
+                    // The remainder of a body that failed to inflate
+                    ReferenceCountUtil.release(msg);
+                } else {
+                    ctx.fireChannelRead(msg);
+                }
+            }
+        }
+    }
+
+    private void startDecoder(HttpRequest request) {
+        HttpHeaders headers = request.headers();
+        String contentEncoding = headers.get(HttpHeaders.Names.CONTENT_ENCODING);
+        if (null == contentEncoding) {
+            return;
+        }
+        contentEncoding = contentEncoding.trim();
+        if (HttpHeaderValues.GZIP.contentEqualsIgnoreCase(contentEncoding) || HttpHeaderValues.X_GZIP.contentEqualsIgnoreCase(contentEncoding)) {
+            decoder = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
+        } else if (HttpHeaderValues.DEFLATE.contentEqualsIgnoreCase(contentEncoding) || HttpHeaderValues.X_DEFLATE.contentEqualsIgnoreCase(contentEncoding)) {
+            // Some clients send raw deflate streams rather than zlib
+            decoder = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.ZLIB_OR_NONE));
+        } else {
+            return;
+        }
+        inflatedSize = 0;
+        // The inflated length isn't known up front. Marking the request chunked keeps handlers that check for a body,
+        // such as admission control, from treating it as having none
+        headers.remove(HttpHeaders.Names.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.Names.CONTENT_LENGTH);
+        HttpHeaders.setTransferEncodingChunked(request);
+    }
+
+    /**
+     * Inflate the next step of compressed input, and pass on the result.
+     *
+     * @return false if the body couldn't be inflated, and the channel has been closed
+     */
+    private boolean inflate(ChannelHandlerContext ctx, ByteBuf input) {
+        if (!input.isReadable()) {
+            return true;
+        }
+        ByteBuf step = input.readSlice(Math.min(input.readableBytes(), MAX_INPUT_PER_STEP)).retain();
+        try {
+            decoder.writeInbound(step);
+        } catch (DecompressionException e) {
+            fail(ctx, "Invalid compressed request body: " + e.getMessage());
+            return false;
+        }
+        return fireInflated(ctx);
+    }
+
+    private boolean finishDecoder(ChannelHandlerContext ctx, LastHttpContent content) {
+        try {
+            decoder.finish();
+        } catch (DecompressionException e) {
+            fail(ctx, "Invalid compressed request body: " + e.getMessage());
+            return false;
+        }
+        if (!fireInflated(ctx)) {
+            return false;
+        }
+        destroyDecoder();
+        LastHttpContent last = new DefaultLastHttpContent();
+        last.trailingHeaders().set(content.trailingHeaders());
+        ctx.fireChannelRead(last);
+        return true;
+    }
+
+    private boolean fireInflated(ChannelHandlerContext ctx) {
+        ByteBuf inflated;
+        while (null != (inflated = (ByteBuf) decoder.readInbound())) {
+            if (!inflated.isReadable()) {
+                inflated.release();
+                continue;
+            }
+            inflatedSize += inflated.readableBytes();
+            if (inflatedSize > maxInflatedSize) {
+                inflated.release();
+                fail(ctx, "Request body inflates to more than " + maxInflatedSize + " bytes");
+                return false;
+            }
+            ctx.fireChannelRead(new DefaultHttpContent(inflated));
+        }
+        return true;
+    }
+
+    private void fail(ChannelHandlerContext ctx, String message) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(message + ", closing " + ctx.channel());
+        }
+        destroyDecoder();
+        releaseBacklog();
+        // The servlet has already been dispatched, so it sees the failure as the channel closing while it reads
+        ctx.close();
+    }
+
+    private void destroyDecoder() {
+        if (null != decoder) {
+            try {
+                decoder.finish();
+            } catch (DecompressionException e) {
+                // The body was incomplete or invalid, and the servlet has already been told, or can't be
+            }
+            Object msg;
+            while (null != (msg = decoder.readInbound())) {
+                ReferenceCountUtil.release(msg);
+            }
+            decoder = null;
+        }
+    }
+
+    private void releaseBacklog() {
+        Object msg;
+        while (null != (msg = backlog.poll())) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        destroyDecoder();
+        releaseBacklog();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        destroyDecoder();
+        releaseBacklog();
+    }
+}
@@ -17,30 +17,68 @@
 
 package org.springframework.boot.context.embedded.netty;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * A {@link io.netty.channel.ChannelInboundHandler} that bridges to and from {@link HttpServletRequest}s and
  * {@link HttpServletResponse}s from Netty HTTP codec objects.
+ * <p>
+ * Requests are read on the channel's event loop, and executed on the request's servlet executor, as provided by the
+ * container's {@link ServletExecutionStrategy}. Requests for {@link NonBlockingServlet}s are executed directly on the
+ * event loop when no other request for the channel is in progress, and are logged if they take long enough that the
+ * servlet is likely blocking.
+ * <p>
+ * The responses for each channel's requests are tracked until they complete, so those still outstanding when a
+ * channel closes are abandoned rather than left in flight, and so connections can be closed once they're idle when the
+ * container is draining.
  *
  * @author Danny Thomas
  */
 @ChannelHandler.Sharable
 class RequestDispatcherHandler extends SimpleChannelInboundHandler<NettyHttpServletRequest> {
+    private static final long BLOCKING_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final AttributeKey<Deque<NettyHttpServletResponse>> OUTSTANDING_RESPONSES = AttributeKey.valueOf(
+            RequestDispatcherHandler.class, "outstandingResponses");
+
     private final Log logger = LogFactory.getLog(getClass());
     private final NettyEmbeddedContext context;
+    private final long queueTimeoutNanos;
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
-    RequestDispatcherHandler(NettyEmbeddedContext context) {
+    /**
+     * @param queueTimeoutMillis the maximum time a request may wait for the servlet executor before being rejected, or
+     *                           0 for no limit
+     */
+    RequestDispatcherHandler(NettyEmbeddedContext context, long queueTimeoutMillis) {
         this.context = checkNotNull(context);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        // Only accessed on the channel's event loop
+        ctx.channel().attr(OUTSTANDING_RESPONSES).set(new ArrayDeque<NettyHttpServletResponse>());
+        channels.add(ctx.channel());
     }
 
     @Override
@@ -49,9 +87,113 @@ class RequestDispatcherHandler extends SimpleChannelInboundHandler<NettyHttpServ
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, NettyHttpServletRequest request) throws Exception {
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Deque<NettyHttpServletResponse> outstanding = ctx.channel().attr(OUTSTANDING_RESPONSES).get();
+        NettyHttpServletResponse response;
+        while (null != (response = outstanding.poll())) {
+            // No longer in flight, as the response can't be sent, even if the servlet is still writing it or the
+            // request is queued or async
+            response.responseCompleted();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * Close connections that have no requests in progress. Called when the container starts draining, as connections
+     * are otherwise only closed after a response.
+     */
+    void closeIdleConnections() {
+        for (final Channel channel : channels) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Deque<NettyHttpServletResponse> outstanding = channel.attr(OUTSTANDING_RESPONSES).get();
+                    removeCompleted(outstanding);
+                    if (outstanding.isEmpty()) {
+                        channel.close();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Does a channel have responses that haven't completed, including those for async requests whose servlet has
+     * returned. Only called on the channel's event loop.
+     */
+    static boolean hasOutstandingResponses(Channel channel) {
+        Deque<NettyHttpServletResponse> outstanding = channel.attr(OUTSTANDING_RESPONSES).get();
+        if (null == outstanding) {
+            return false;
+        }
+        removeCompleted(outstanding);
+        return !outstanding.isEmpty();
+    }
+
+    private static void removeCompleted(Deque<NettyHttpServletResponse> outstanding) {
+        // A channel's responses complete in order, other than async responses, so only the head needs checking
+        while (!outstanding.isEmpty() && outstanding.peek().isCompleted()) {
+            outstanding.poll();
+        }
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final NettyHttpServletRequest request) throws Exception {
+        Deque<NettyHttpServletResponse> outstanding = ctx.channel().attr(OUTSTANDING_RESPONSES).get();
+        removeCompleted(outstanding);
+        outstanding.add((NettyHttpServletResponse) request.getServletResponse());
+        Runnable task = new SerialExecutor.RejectableTask() {
+            @Override
+            public void run() {
+                try {
+                    dispatch(request);
+                } catch (Throwable t) {
+                    logger.error("Unexpected exception caught during request", t);
+                    ((NettyHttpServletResponse) request.getServletResponse()).abort();
+                    ctx.close();
+                }
+            }
+
+            @Override
+            public void rejected(RejectedExecutionException e) {
+                // Queued behind the channel's other requests, so there's no caller to throw to
+                try {
+                    respondUnavailable(request, e);
+                } catch (Throwable t) {
+                    logger.error("Unexpected exception caught during request", t);
+                    ((NettyHttpServletResponse) request.getServletResponse()).abort();
+                    ctx.close();
+                }
+            }
+        };
+        try {
+            Executor servletExecutor = request.getServletExecutor();
+            boolean executedDirect = servletExecutor instanceof SerialExecutor && context.isNonBlocking(request.getRequestURI())
+                    && ((SerialExecutor) servletExecutor).tryExecuteDirect(new NonBlockingGuard(request.getRequestURI(), task));
+            if (!executedDirect) {
+                // Queued behind the channel's other requests, on the servlet executor rather than the event loop
+                servletExecutor.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            respondUnavailable(request, e);
+        }
+    }
+
+    private void respondUnavailable(NettyHttpServletRequest request, RejectedExecutionException e) throws IOException {
+        logger.debug("Servlet executor rejected request, responding with 503", e);
+        HttpServletResponse servletResponse = (HttpServletResponse) request.getServletResponse();
+        servletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        servletResponse.getOutputStream().close();
+    }
+
+    private void dispatch(NettyHttpServletRequest request) throws Exception {
         HttpServletResponse servletResponse = (HttpServletResponse) request.getServletResponse();
         try {
+            if (queueTimeoutNanos > 0 && System.nanoTime() - request.getReceivedNanos() > queueTimeoutNanos) {
+                // The client has likely given up by now, so don't spend time servicing the request
+                servletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
             NettyRequestDispatcher dispatcher = (NettyRequestDispatcher) context.getRequestDispatcher(request.getRequestURI());
             if (dispatcher == null) {
                 servletResponse.sendError(404);
@@ -65,6 +207,33 @@ class RequestDispatcherHandler extends SimpleChannelInboundHandler<NettyHttpServ
         }
     }
 
+    /**
+     * Logs requests executing on the event loop that take longer than a non-blocking servlet should.
+     */
+    private class NonBlockingGuard implements Runnable {
+        private final String requestURI;
+        private final Runnable task;
+
+        NonBlockingGuard(String requestURI, Runnable task) {
+            this.requestURI = requestURI;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed > BLOCKING_THRESHOLD_NANOS) {
+                    logger.warn("Non-blocking request " + requestURI + " held the event loop for "
+                            + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, the servlet or its filters may be blocking");
+                }
+            }
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("Unexpected exception caught during request", cause);
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link io.netty.channel.ChannelDuplexHandler} that compresses responses with gzip or deflate, as negotiated by the
+ * <code>Accept-Encoding</code> header of the request, when the response has a compressible media type and a body of
+ * at least the minimum size.
+ * <p>
+ * Responses written as a {@link FullHttpResponse} are compressed in one pass with a compressor belonging to the event
+ * loop, so the common case of a small buffered response doesn't allocate a compressor. Streamed responses are
+ * compressed chunk by chunk with a compressor of their own, unless they declare a <code>Content-Length</code>, in
+ * which case they're written as is because their content may be a file region.
+ *
+ * @author Danny Thomas
+ */
+class ResponseCompressionHandler extends ChannelDuplexHandler {
+    private static final String IDENTITY = "identity";
+    private static final int COMPRESSION_LEVEL = 6;
+    // Removed, and so ended, when an event loop thread from a DefaultThreadFactory terminates, rather than holding the
+    // deflater's native memory until the thread is collected
+    private static final FastThreadLocal<Compressor> GZIP_COMPRESSOR = new CompressorThreadLocal(true);
+    private static final FastThreadLocal<Compressor> DEFLATE_COMPRESSOR = new CompressorThreadLocal(false);
+
+    private final CompressionPolicy policy;
+    // Pipelined requests are answered in order
+    private final Queue<String> acceptedEncodings = new ArrayDeque<>();
+    private Compressor streamCompressor;
+
+    /**
+     * @param policy the media types and minimum size of responses to compress
+     */
+    ResponseCompressionHandler(CompressionPolicy policy) {
+        this.policy = checkNotNull(policy);
+    }
+
+    /**
+     * Get the content coding to use for an <code>Accept-Encoding</code> header value, <code>gzip</code> or
+     * <code>deflate</code> in that order of preference, or null if the client accepts neither.
+     */
+    static String getAcceptedEncoding(String acceptEncoding) {
+        if (null == acceptEncoding) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if (isRefused(parameters)) {
+                continue;
+            }
+            String name = parameters[0].trim();
+            if ("gzip".equalsIgnoreCase(name)) {
+                return "gzip";
+            }
+            deflate |= "deflate".equalsIgnoreCase(name);
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    private static boolean isRefused(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            String encoding = getAcceptedEncoding(((HttpRequest) msg).headers().get(HttpHeaders.Names.ACCEPT_ENCODING));
+            acceptedEncodings.add(null == encoding ? IDENTITY : encoding);
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof HttpResponse) {
+            HttpResponse response = (HttpResponse) msg;
+            if (response.status().code() < 200) {
+                // Informational, and followed by the final response
+                ctx.write(msg, promise);
+                return;
+            }
+            String encoding = acceptedEncodings.poll();
+            if (null != encoding && !IDENTITY.equals(encoding) && isCompressible(response)) {
+                if (msg instanceof FullHttpResponse) {
+                    writeFullResponse(ctx, (FullHttpResponse) msg, encoding, promise);
+                    return;
+                }
+                if (!HttpHeaders.isContentLengthSet(response)) {
+                    streamCompressor = new Compressor("gzip".equals(encoding), COMPRESSION_LEVEL);
+                    setContentEncoding(response, encoding);
+                }
+            }
+            ctx.write(msg, promise);
+            return;
+        }
+        if (null != streamCompressor && (msg instanceof HttpContent || msg instanceof ByteBuf)) {
+            writeCompressedContent(ctx, msg, promise);
+            return;
+        }
+        ctx.write(msg, promise);
+    }
+
+    private boolean isCompressible(HttpResponse response) {
+        int status = response.status().code();
+        if (HttpResponseStatus.NO_CONTENT.code() == status || HttpResponseStatus.NOT_MODIFIED.code() == status) {
+            return false;
+        }
+        HttpHeaders headers = response.headers();
+        if (headers.contains(HttpHeaders.Names.CONTENT_ENCODING)) {
+            return false;
+        }
+        // The length of a streamed response isn't known up front
+        long length = response instanceof FullHttpResponse ? ((FullHttpResponse) response).content().readableBytes() : -1;
+        return policy.isCompressible(headers.get(HttpHeaders.Names.CONTENT_TYPE), length);
+    }
+
+    private void writeFullResponse(ChannelHandlerContext ctx, FullHttpResponse response, String encoding, ChannelPromise promise) {
+        ByteBuf content = response.content();
+        Compressor compressor = "gzip".equals(encoding) ? GZIP_COMPRESSOR.get() : DEFLATE_COMPRESSOR.get();
+        ByteBuf compressed;
+        try {
+            compressed = compressor.compress(ctx.alloc(), content, true);
+        } finally {
+            compressor.reset();
+        }
+        FullHttpResponse compressedResponse = new DefaultFullHttpResponse(response.protocolVersion(), response.status(), compressed, false);
+        compressedResponse.headers().set(response.headers());
+        setContentEncoding(compressedResponse, encoding);
+        HttpHeaders.setContentLength(compressedResponse, compressed.readableBytes());
+        response.release();
+        ctx.write(compressedResponse, promise);
+    }
+
+    private void writeCompressedContent(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        ByteBuf content = msg instanceof HttpContent ? ((HttpContent) msg).content() : (ByteBuf) msg;
+        boolean last = msg instanceof LastHttpContent;
+        ByteBuf compressed;
+        try {
+            compressed = streamCompressor.compress(ctx.alloc(), content, last);
+        } finally {
+            ReferenceCountUtil.release(msg);
+            if (last) {
+                streamCompressor.end();
+                streamCompressor = null;
+            }
+        }
+        if (last) {
+            ctx.write(new DefaultLastHttpContent(compressed), promise);
+        } else if (compressed.isReadable()) {
+            ctx.write(new DefaultHttpContent(compressed), promise);
+        } else {
+            compressed.release();
+            ctx.write(Unpooled.EMPTY_BUFFER, promise);
+        }
+    }
+
+    private static void setContentEncoding(HttpResponse response, String encoding) {
+        HttpHeaders headers = response.headers();
+        headers.set(HttpHeaders.Names.CONTENT_ENCODING, encoding);
+        headers.add(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+        if (!(response instanceof FullHttpResponse)) {
+            headers.remove(HttpHeaders.Names.CONTENT_LENGTH);
+            HttpHeaders.setTransferEncodingChunked(response);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (null != streamCompressor) {
+            streamCompressor.end();
+            streamCompressor = null;
+        }
+    }
+
+    private static final class CompressorThreadLocal extends FastThreadLocal<Compressor> {
+        private final boolean gzip;
+
+        CompressorThreadLocal(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        @Override
+        protected Compressor initialValue() {
+            return new Compressor(gzip, COMPRESSION_LEVEL);
+        }
+
+        @Override
+        protected void onRemoval(Compressor compressor) {
+            compressor.end();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An {@link Executor} that runs tasks one at a time, in submission order, on a delegate {@link Executor}.
+ * <p>
+ * Used to keep the requests for a single channel sequential when they're executed on a shared pool.
+ * <p>
+ * A task is rejected by the caller's {@link #execute(Runnable)} if the delegate rejects it straight away. Tasks that
+ * were queued behind another task are handed to the delegate once it finishes, when there's no caller to throw to, so
+ * a {@link RejectableTask} is told of the rejection instead, and the tasks queued behind it are still run in order.
+ *
+ * @author Danny Thomas
+ */
+class SerialExecutor implements Executor {
+    private final Queue<SerialTask> tasks = new ArrayDeque<>();
+    private final Executor executor;
+    private Runnable active;
+
+    SerialExecutor(Executor executor) {
+        this.executor = checkNotNull(executor);
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        tasks.offer(new SerialTask(checkNotNull(task)));
+        if (null == active) {
+            // Nothing is queued while idle, so this is the task just offered
+            active = tasks.poll();
+            try {
+                executor.execute(active);
+            } catch (RejectedExecutionException e) {
+                active = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Execute a task on the calling thread if no other tasks are running or queued.
+     *
+     * @return true if the task was executed, or false if it wasn't because other tasks are running or queued
+     */
+    boolean tryExecuteDirect(Runnable task) {
+        checkNotNull(task);
+        synchronized (this) {
+            if (null != active || !tasks.isEmpty()) {
+                return false;
+            }
+            active = task;
+        }
+        try {
+            task.run();
+        } finally {
+            scheduleNext();
+        }
+        return true;
+    }
+
+    /**
+     * Are there no tasks running or queued.
+     */
+    synchronized boolean isIdle() {
+        return null == active && tasks.isEmpty();
+    }
+
+    private void scheduleNext() {
+        while (true) {
+            SerialTask next;
+            RejectedExecutionException rejection;
+            synchronized (this) {
+                active = next = tasks.poll();
+                if (null == next) {
+                    return;
+                }
+                try {
+                    executor.execute(next);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Left active while it's rejected, so tasks submitted meanwhile queue behind it
+                    rejection = e;
+                }
+            }
+            next.rejected(rejection);
+        }
+    }
+
+    /**
+     * A task that's told if the delegate rejects it after it was queued.
+     */
+    interface RejectableTask extends Runnable {
+        /**
+         * Called instead of {@link #run()}, on the thread that ran the task before this one.
+         */
+        void rejected(RejectedExecutionException e);
+    }
+
+    private final class SerialTask implements Runnable {
+        private final Runnable task;
+
+        SerialTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        }
+
+        void rejected(RejectedExecutionException e) {
+            if (task instanceof RejectableTask) {
+                ((RejectableTask) task).rejected(e);
+            }
+        }
+    }
+}
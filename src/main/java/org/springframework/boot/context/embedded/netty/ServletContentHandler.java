@@ -21,31 +21,58 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.*;
 
+import java.util.concurrent.Executor;
+
 /**
  * {@link io.netty.channel.ChannelInboundHandler} responsible for initial request handling, and getting received
  * {@link HttpContent} messages to the {@link HttpContentInputStream} for the request.
  */
 class ServletContentHandler extends ChannelInboundHandlerAdapter {
     private final NettyEmbeddedContext servletContext;
-    private HttpContentInputStream inputStream; // FIXME this feels wonky, need a better approach
+    private final Executor servletExecutor;
+    private final int inputLowWaterMark;
+    private final int inputHighWaterMark;
+    private final long readTimeoutMillis;
+    private final int readSpins;
+    private HttpContentInputStream inputStream; // the stream of the request whose content is being read
+    private ChannelWritabilityMonitor writabilityMonitor;
 
-    ServletContentHandler(NettyEmbeddedContext servletContext) {
+    /**
+     * @param inputLowWaterMark  the number of bytes queued for the servlet at or below which reading is resumed
+     * @param inputHighWaterMark the number of bytes queued for the servlet above which reading is suspended
+     * @param readTimeoutMillis  the maximum time a servlet's blocking read waits for content, or 0 for no limit
+     * @param readSpins          the number of times a servlet's blocking read polls for content before parking
+     */
+    ServletContentHandler(NettyEmbeddedContext servletContext, Executor servletExecutor, int inputLowWaterMark, int inputHighWaterMark,
+                          long readTimeoutMillis, int readSpins) {
         this.servletContext = servletContext;
+        this.servletExecutor = servletExecutor;
+        this.inputLowWaterMark = inputLowWaterMark;
+        this.inputHighWaterMark = inputHighWaterMark;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.readSpins = readSpins;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        inputStream = new HttpContentInputStream(ctx.channel());
+        writabilityMonitor = new ChannelWritabilityMonitor(ctx.channel(), servletExecutor);
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof HttpRequest) {
             HttpRequest request = (HttpRequest) msg;
+            servletContext.getRequestTracker().requestStarted();
             HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false);
             HttpHeaders.setKeepAlive(response, HttpHeaders.isKeepAlive(request));
-            NettyHttpServletResponse servletResponse = new NettyHttpServletResponse(ctx, servletContext, response);
-            NettyHttpServletRequest servletRequest = new NettyHttpServletRequest(ctx, servletContext, request, servletResponse, inputStream);
+            // A stream per request, so a pipelined request's content, read listener and end of body are its own
+            inputStream = new HttpContentInputStream(ctx.channel(), servletExecutor, inputLowWaterMark, inputHighWaterMark,
+                    readTimeoutMillis, readSpins);
+            NettyHttpServletResponse servletResponse = new NettyHttpServletResponse(ctx, servletContext, response, writabilityMonitor);
+            servletResponse.setRequestInputStream(inputStream);
+            NettyHttpServletRequest servletRequest = new NettyHttpServletRequest(ctx, servletContext, request, servletResponse, inputStream, servletExecutor);
+            servletResponse.setServletRequest(servletRequest);
+            inputStream.setServletRequest(servletRequest);
             if (HttpHeaders.is100ContinueExpected(request)) {
                 ctx.write(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE), ctx.voidPromise());
             }
@@ -53,11 +80,27 @@ class ServletContentHandler extends ChannelInboundHandlerAdapter {
         }
         if (msg instanceof HttpContent) {
             inputStream.addContent((HttpContent) msg);
+            if (inputStream.isOverHighWaterMark() && ctx.channel().config().isAutoRead()) {
+                // The servlet isn't keeping up, so stop reading until it's drained the queue, rather than buffering
+                // the rest of the body
+                ctx.channel().config().setAutoRead(false);
+                inputStream.readingSuspended();
+            }
         }
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        writabilityMonitor.writabilityChanged();
+        ctx.fireChannelWritabilityChanged();
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        inputStream.close();
+        if (null != inputStream) {
+            inputStream.channelInactive();
+        }
+        writabilityMonitor.channelInactive();
+        ctx.fireChannelInactive();
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Strategy for executing servlet requests received by a {@link NettyEmbeddedServletContainer}.
+ * <p>
+ * Requests are read from the channel on the worker {@link io.netty.channel.EventLoop}, and handed to the
+ * {@link Executor} returned by {@link #executor(Channel)} for filter chain and servlet execution. Executors returned
+ * must run tasks for a given channel one at a time and in submission order, so that pipelined requests are serviced
+ * sequentially.
+ *
+ * @author Danny Thomas
+ * @see BoundedServletExecutionStrategy
+ * @see ElasticServletExecutionStrategy
+ * @see EventLoopAffineServletExecutionStrategy
+ * @see InlineServletExecutionStrategy
+ * @see ThreadPerRequestServletExecutionStrategy
+ */
+public interface ServletExecutionStrategy {
+    /**
+     * Start the strategy, called before the container starts accepting connections.
+     *
+     * @param workerGroup the {@link EventLoopGroup} channels are registered with
+     */
+    void start(EventLoopGroup workerGroup);
+
+    /**
+     * Get the {@link Executor} for servlet requests received on a channel. Called once per channel.
+     */
+    Executor executor(Channel channel);
+
+    /**
+     * Stop the strategy, waiting for executing requests to complete.
+     */
+    void stop() throws InterruptedException;
+}
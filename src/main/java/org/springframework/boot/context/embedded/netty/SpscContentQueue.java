@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import io.netty.handler.codec.http.HttpContent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A lock-free queue of {@link HttpContent}, handing content from a channel's event loop, the only producer, to the
+ * servlet thread reading the request body, the only consumer.
+ * <p>
+ * Content is held in fixed size ring buffers. Rather than taking a lock and allocating a node for each element, the
+ * producer publishes an element with an ordered store to its slot, and the consumer takes it with a volatile load and
+ * frees the slot. Neither side reads the other's index, and each index is padded onto its own cache line, so the
+ * threads only share the slots they hand over.
+ * <p>
+ * The event loop can't block when a ring is full, so the producer links a new ring and the consumer follows once it
+ * has drained the old one. The amount of content queued is bounded by the {@link HttpContentInputStream} water marks
+ * rather than by the queue.
+ *
+ * @author Danny Thomas
+ */
+final class SpscContentQueue {
+    static final int DEFAULT_CAPACITY = 16;
+    // Left in the slot the producer would have used when it links a new ring, for the consumer to follow
+    private static final Object JUMP = new Object();
+
+    private final int capacity;
+    private final int mask;
+    private final Cursor producer = new Cursor();
+    private final Cursor consumer = new Cursor();
+
+    SpscContentQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of slots in each ring, a power of two
+     */
+    SpscContentQueue(int capacity) {
+        checkArgument(capacity >= 2 && Integer.bitCount(capacity) == 1, "capacity must be a power of two of at least 2");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        // The extra slot links to the next ring
+        AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<>(capacity + 1);
+        producer.buffer = buffer;
+        consumer.buffer = buffer;
+    }
+
+    /**
+     * Add content to the queue. Only called by the producer.
+     */
+    void offer(HttpContent content) {
+        checkNotNull(content);
+        AtomicReferenceArray<Object> buffer = producer.buffer;
+        long index = producer.index;
+        int offset = offset(index);
+        if (null == buffer.get(offset(index + 1))) {
+            // The slots are freed in order, so this slot is free too, and one is left for a jump to a new ring
+            buffer.lazySet(offset, content);
+        } else {
+            AtomicReferenceArray<Object> next = new AtomicReferenceArray<>(capacity + 1);
+            next.lazySet(offset, content);
+            buffer.lazySet(capacity, next);
+            // Stored last, so the consumer sees the link and the content once it sees the jump
+            buffer.lazySet(offset, JUMP);
+            producer.buffer = next;
+        }
+        producer.index = index + 1;
+    }
+
+    /**
+     * Take the content at the head of the queue, or null if it's empty. Only called by the consumer.
+     */
+    HttpContent poll() {
+        AtomicReferenceArray<Object> buffer = consumer.buffer;
+        long index = consumer.index;
+        int offset = offset(index);
+        Object element = buffer.get(offset);
+        if (null == element) {
+            return null;
+        }
+        if (JUMP == element) {
+            @SuppressWarnings("unchecked")
+            AtomicReferenceArray<Object> next = (AtomicReferenceArray<Object>) buffer.get(capacity);
+            consumer.buffer = next;
+            buffer = next;
+            element = next.get(offset);
+        }
+        buffer.lazySet(offset, null);
+        consumer.index = index + 1;
+        return (HttpContent) element;
+    }
+
+    /**
+     * Returns true if the queue is empty. Only called by the consumer.
+     */
+    boolean isEmpty() {
+        return null == consumer.buffer.get(offset(consumer.index));
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+
+    /**
+     * The position of one side of the queue. The index is written by one thread for every element, so it's padded to
+     * keep it off the cache line of the other side's index. HotSpot lays out fields of the same type in declaration
+     * order, and references after primitives.
+     */
+    @SuppressWarnings("unused")
+    private static final class Cursor {
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private long index;
+        private long q1, q2, q3, q4, q5, q6, q7;
+        private AtomicReferenceArray<Object> buffer;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A size bounded cache of small static resources served by the default servlet, held in direct buffers that are never
+ * written to once loaded. Resources the container's compression settings apply to also hold gzip and deflate
+ * variants, compressed once when the resource is loaded. Responses are written from a duplicate of the cached buffer,
+ * so serving a cached resource doesn't copy it.
+ * <p>
+ * Resources are evicted least recently used first once the total size of the cached buffers exceeds the limit. Files
+ * are reloaded when their size or modification time changes, while resources from jars are assumed to be immutable.
+ * Resources too large to cache are remembered as such, so they aren't loaded again on every request.
+ *
+ * @author Danny Thomas
+ */
+public class StaticResourceCache {
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_RESOURCE_BYTES = 64 * 1024;
+
+    private final int maxResourceBytes;
+    private final Cache<String, CachedResource> cache;
+    private volatile CompressionPolicy compressionPolicy;
+
+    public StaticResourceCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_RESOURCE_BYTES);
+    }
+
+    /**
+     * @param maxBytes         the maximum total size of the cached resources, including compressed variants
+     * @param maxResourceBytes the size of the largest resource to cache, larger resources are always read from their
+     *                         file or jar
+     */
+    public StaticResourceCache(long maxBytes, int maxResourceBytes) {
+        checkArgument(maxBytes > 0, "maxBytes must be greater than zero");
+        checkArgument(maxResourceBytes > 0, "maxResourceBytes must be greater than zero");
+        this.maxResourceBytes = maxResourceBytes;
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<String, CachedResource>() {
+                    @Override
+                    public int weigh(String key, CachedResource value) {
+                        // Resources that are too large to cache weigh something, so they're still evicted
+                        return Math.max(1, value.size());
+                    }
+                })
+                .removalListener(new RemovalListener<String, CachedResource>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CachedResource> notification) {
+                        // Responses being written from the resource hold their own references
+                        notification.getValue().release();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get a resource from the cache, loading it if it's not cached or has changed.
+     *
+     * @param file the file for the resource, or null if the resource isn't a file
+     * @return the cached resource, or null if the resource is too large to cache
+     */
+    CachedResource get(String path, final URL resource, final File file, final String mimeType) throws IOException {
+        // Concurrent requests for a resource that isn't cached wait for a single load
+        Callable<CachedResource> loader = new Callable<CachedResource>() {
+            @Override
+            public CachedResource call() throws IOException {
+                return load(resource, file, mimeType);
+            }
+        };
+        try {
+            CachedResource cached = cache.get(path, loader);
+            if (null != file && !cached.isCurrent(file)) {
+                // Only the stale resource is invalidated, so a concurrent reload isn't thrown away. Responses already
+                // holding it keep their own references
+                cache.asMap().remove(path, cached);
+                cached = cache.get(path, loader);
+            }
+            return cached.isTooLarge() ? null : cached;
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (UncheckedExecutionException | ExecutionError e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private CachedResource load(URL resource, File file, String mimeType) throws IOException {
+        URLConnection connection = null == file ? resource.openConnection() : null;
+        long lastModified = null == file ? connection.getLastModified() : file.lastModified();
+        long length = null == file ? connection.getContentLengthLong() : file.length();
+        if (length < 0 || length > maxResourceBytes) {
+            // Remembered, so the resource isn't loaded again for every request, until a file changes
+            return CachedResource.tooLarge(lastModified, length);
+        }
+        try (InputStream in = null == file ? connection.getInputStream() : new FileInputStream(file)) {
+            ByteBuf content = Unpooled.directBuffer((int) length, (int) length);
+            try {
+                while (content.isWritable() && content.writeBytes(in, content.writableBytes()) >= 0) {
+                    // Read until the buffer is full, or the stream ends
+                }
+                CompressionPolicy policy = compressionPolicy;
+                boolean compressible = null != policy && policy.isCompressible(mimeType, length);
+                return new CachedResource(content, lastModified, length, compressible);
+            } catch (IOException | RuntimeException e) {
+                content.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Set the media types and minimum size of resources to hold compressed variants of, or null for none. Set by the
+     * container from its compression configuration before any resources are loaded.
+     */
+    void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Remove all resources from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * Get the number of resources cached.
+     */
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * A cached resource, and its compressed variants.
+     */
+    static final class CachedResource {
+        private final ByteBuf content;
+        private final ByteBuf gzipContent;
+        private final ByteBuf deflateContent;
+        private final long lastModified;
+        private final long length;
+        private final boolean compressible;
+        private boolean released;
+
+        CachedResource(ByteBuf content, long lastModified, long length, boolean compressible) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.compressible = compressible;
+            if (compressible) {
+                gzipContent = compress(content, true);
+                deflateContent = compress(content, false);
+            } else {
+                gzipContent = null;
+                deflateContent = null;
+            }
+        }
+
+        /**
+         * Get an entry that records a resource is too large to cache.
+         */
+        static CachedResource tooLarge(long lastModified, long length) {
+            return new CachedResource(null, lastModified, length, false);
+        }
+
+        boolean isTooLarge() {
+            return null == content;
+        }
+
+        private static ByteBuf compress(ByteBuf content, boolean gzip) {
+            Compressor compressor = new Compressor(gzip, Deflater.BEST_COMPRESSION);
+            ByteBuf compressed;
+            try {
+                compressed = compressor.compress(UnpooledByteBufAllocator.DEFAULT, content.duplicate(), true);
+            } finally {
+                compressor.end();
+            }
+            try {
+                if (compressed.readableBytes() >= content.readableBytes()) {
+                    // Not worth sending compressed
+                    return null;
+                }
+                // Sized exactly, as the buffer is held for the life of the entry
+                return Unpooled.directBuffer(compressed.readableBytes(), compressed.readableBytes()).writeBytes(compressed);
+            } finally {
+                compressed.release();
+            }
+        }
+
+        boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        /**
+         * Get a reference to the content for an accepted encoding, for a response to write and release, or null if
+         * the resource has been removed from the cache.
+         *
+         * @param encoding the accepted content coding, <code>gzip</code>, <code>deflate</code> or null for the
+         *                 identity coding
+         */
+        synchronized ByteBuf retainedContent(String encoding) {
+            if (released) {
+                // Evicted or replaced since it was returned from the cache
+                return null;
+            }
+            ByteBuf variant = content;
+            if ("gzip".equals(encoding) && null != gzipContent) {
+                variant = gzipContent;
+            } else if ("deflate".equals(encoding) && null != deflateContent) {
+                variant = deflateContent;
+            }
+            return variant.duplicate().retain();
+        }
+
+        /**
+         * Get the content coding of the content written for an accepted encoding, or null for the identity coding.
+         */
+        String contentEncoding(String encoding) {
+            if ("gzip".equals(encoding) && null != gzipContent) {
+                return encoding;
+            }
+            if ("deflate".equals(encoding) && null != deflateContent) {
+                return encoding;
+            }
+            return null;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        boolean isCompressible() {
+            return compressible;
+        }
+
+        int size() {
+            int size = null == content ? 0 : content.capacity();
+            if (null != gzipContent) {
+                size += gzipContent.capacity();
+            }
+            if (null != deflateContent) {
+                size += deflateContent.capacity();
+            }
+            return size;
+        }
+
+        synchronized void release() {
+            released = true;
+            if (null != content) {
+                content.release();
+            }
+            if (null != gzipContent) {
+                gzipContent.release();
+            }
+            if (null != deflateContent) {
+                deflateContent.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * A {@link ServletExecutionStrategy} that executes each request on its own thread.
+ * <p>
+ * When running on a JVM that supports virtual threads, requests are executed on virtual threads, so blocking
+ * servlets park rather than holding a platform thread, and the number of concurrent blocking requests isn't limited
+ * by a pool size. On older JVMs a platform thread is started per request, which is only suitable for low
+ * concurrency.
+ *
+ * @author Danny Thomas
+ */
+public class ThreadPerRequestServletExecutionStrategy extends AbstractServletExecutionStrategy {
+    private final Log logger = LogFactory.getLog(getClass());
+
+    @Override
+    protected ExecutorService newExecutorService(ThreadFactory threadFactory) {
+        ThreadFactory virtualThreadFactory = virtualThreadFactory();
+        if (null != virtualThreadFactory) {
+            logger.info("Executing servlet requests on virtual threads");
+            return new ThreadPerTaskExecutorService(virtualThreadFactory);
+        }
+        logger.warn("Virtual threads are not supported by this JVM, executing servlet requests on platform threads");
+        return new ThreadPerTaskExecutorService(threadFactory);
+    }
+
+    /**
+     * Get a {@link ThreadFactory} for virtual threads, looked up reflectively to avoid a dependency on Java 21.
+     *
+     * @return the factory, or null if virtual threads are not supported
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "servlet-virtual-", 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * An {@link ExecutorService} that starts a new thread for each task, tracking running threads for shutdown.
+     */
+    private static class ThreadPerTaskExecutorService extends AbstractExecutorService {
+        private final ThreadFactory threadFactory;
+        private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        private volatile boolean shutdown;
+
+        ThreadPerTaskExecutorService(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            Thread thread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        threads.remove(Thread.currentThread());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && threads.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Thread thread : threads) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                thread.join(remaining);
+            }
+            return isTerminated();
+        }
+    }
+}
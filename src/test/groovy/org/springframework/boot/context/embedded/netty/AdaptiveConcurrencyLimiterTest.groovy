@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for {@link AdaptiveConcurrencyLimiter}.
+ */
+class AdaptiveConcurrencyLimiterTest extends Specification {
+    def limiter = new AdaptiveConcurrencyLimiter(10, 1, 100)
+
+    def 'permits are not acquired over the limit'() {
+        when:
+        10.times { assert limiter.tryAcquire() }
+
+        then:
+        !limiter.tryAcquire()
+        limiter.inFlight == 10
+    }
+
+    def 'limit grows when latency is steady and the limit is in use'() {
+        given:
+        10.times { limiter.tryAcquire() }
+
+        when:
+        release(10)
+        limiter.acquire()
+        release(10)
+
+        then:
+        limiter.limit > 10
+    }
+
+    def 'limit does not grow when the limit is not in use'() {
+        given:
+        limiter.tryAcquire()
+
+        when:
+        release(10)
+
+        then:
+        limiter.limit == 10
+    }
+
+    def 'limit shrinks when latency increases'() {
+        given:
+        10.times { limiter.tryAcquire() }
+        release(10)
+        def limit = limiter.limit
+
+        when:
+        limiter.acquire()
+        release(100)
+
+        then:
+        limiter.limit < limit
+        limiter.minRttNanos < limiter.smoothedRttNanos
+    }
+
+    def 'concurrent releases return every permit and keep the limit within bounds'() {
+        given:
+        def pool = Executors.newFixedThreadPool(8)
+        def start = new CountDownLatch(1)
+        def done = new CountDownLatch(8)
+
+        when:
+        8.times { i ->
+            pool.execute {
+                start.await()
+                1000.times { j ->
+                    limiter.acquire()
+                    release(1 + (i + j) % 20)
+                }
+                done.countDown()
+            }
+        }
+        start.countDown()
+
+        then:
+        done.await(10, TimeUnit.SECONDS)
+        limiter.inFlight == 0
+        limiter.limit >= 1 && limiter.limit <= 100
+        limiter.minRttNanos >= TimeUnit.MILLISECONDS.toNanos(1)
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    private void release(long millis) {
+        limiter.release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis))
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import io.netty.util.ReferenceCountUtil
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServlet
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.concurrent.Executor
+
+/**
+ * Tests for {@link AdmissionControlHandler}.
+ */
+class AdmissionControlHandlerTest extends Specification {
+    def context = new NettyEmbeddedContext('/', Thread.currentThread().getContextClassLoader(), 'ServerInfo')
+    def dispatcher = new RequestDispatcherHandler(context, 0)
+    def tasks = []
+    def queueing = { tasks << it } as Executor
+    def channels = []
+
+    def cleanup() {
+        channels.each { EmbeddedChannel channel ->
+            def msg
+            while (null != (msg = channel.readOutbound())) {
+                ReferenceCountUtil.release(msg)
+            }
+            channel.close()
+        }
+    }
+
+    def 'requests are admitted up to the in-flight limit'() {
+        given:
+        def admission = new AdmissionControlHandler(context, 2, null)
+        def first = newChannel(admission)
+        def second = newChannel(admission)
+
+        when:
+        first.writeInbound(get())
+        second.writeInbound(get())
+
+        then:
+        null == first.readOutbound()
+        null == second.readOutbound()
+        tasks.size() == 2
+        admission.rejectedRequests == 0
+    }
+
+    def 'a request over the in-flight limit is rejected with a 503, and the connection kept alive'() {
+        given:
+        def admission = new AdmissionControlHandler(context, 1, null)
+        def busy = newChannel(admission)
+        def channel = newChannel(admission)
+        busy.writeInbound(get())
+
+        when:
+        channel.writeInbound(get())
+
+        then:
+        def response = channel.readOutbound() as FullHttpResponse
+        response.status() == HttpResponseStatus.SERVICE_UNAVAILABLE
+        response.headers().get(HttpHeaders.Names.SERVER) == 'ServerInfo'
+        HttpHeaders.getContentLength(response) == response.content().readableBytes()
+        HttpHeaders.isKeepAlive(response)
+        channel.isOpen()
+        admission.rejectedRequests == 1
+        context.getRequestTracker().getInFlight() == 1
+    }
+
+    def 'a rejected request with a body has its connection closed'() {
+        given:
+        def admission = new AdmissionControlHandler(context, 1, null)
+        def busy = newChannel(admission)
+        def channel = newChannel(admission)
+        busy.writeInbound(get())
+        def request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, '/')
+        HttpHeaders.setContentLength(request, 10)
+
+        when:
+        channel.writeInbound(request)
+
+        then:
+        def response = channel.readOutbound() as FullHttpResponse
+        response.status() == HttpResponseStatus.SERVICE_UNAVAILABLE
+        !HttpHeaders.isKeepAlive(response)
+        !channel.isOpen()
+    }
+
+    def 'a request pipelined behind an outstanding response is not rejected'() {
+        given:
+        def admission = new AdmissionControlHandler(context, 1, null)
+        def channel = newChannel(admission)
+        channel.writeInbound(get())
+
+        when:
+        channel.writeInbound(get())
+
+        then:
+        null == channel.readOutbound()
+        tasks.size() == 2
+        admission.rejectedRequests == 0
+    }
+
+    def 'a request pipelined behind an async response is not rejected once its servlet has returned'() {
+        given:
+        context.addServlet('async', new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync()
+            }
+        }).addMapping('/async')
+        def admission = new AdmissionControlHandler(context, 1, null)
+        def executor = new SerialExecutor({ it.run() } as Executor)
+        def channel = newChannel(admission, executor)
+        channel.writeInbound(get('/async'))
+
+        expect:
+        executor.isIdle()
+        context.getRequestTracker().getInFlight() == 1
+
+        when:
+        channel.writeInbound(get('/async'))
+
+        then:
+        null == channel.readOutbound()
+        context.getRequestTracker().getInFlight() == 2
+        admission.rejectedRequests == 0
+    }
+
+    def 'a request is rejected when the concurrency limiter has no permits'() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(1, 1, 1)
+        def admission = new AdmissionControlHandler(context, 0, limiter)
+        def busy = newChannel(admission)
+        def channel = newChannel(admission)
+        busy.writeInbound(get())
+
+        when:
+        channel.writeInbound(get())
+
+        then:
+        (channel.readOutbound() as FullHttpResponse).status() == HttpResponseStatus.SERVICE_UNAVAILABLE
+        limiter.rejected == 1
+        limiter.inFlight == 1
+        admission.rejectedRequests == 1
+    }
+
+    private EmbeddedChannel newChannel(AdmissionControlHandler admission, Executor servletExecutor = queueing) {
+        def channel = new EmbeddedChannel(new ServletContentHandler(context, servletExecutor, HttpContentInputStream.DEFAULT_LOW_WATER_MARK,
+                HttpContentInputStream.DEFAULT_HIGH_WATER_MARK, HttpContentInputStream.DEFAULT_READ_TIMEOUT_MILLIS, 0),
+                admission, dispatcher)
+        channels << channel
+        channel
+    }
+
+    private static HttpRequest get(String uri = '/') {
+        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri)
+    }
+}
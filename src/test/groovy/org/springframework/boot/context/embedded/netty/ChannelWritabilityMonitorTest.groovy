@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.util.concurrent.MoreExecutors
+import io.netty.channel.Channel
+import io.netty.channel.EventLoop
+import spock.lang.Specification
+
+import javax.servlet.WriteListener
+import java.nio.channels.ClosedChannelException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for {@link ChannelWritabilityMonitor}.
+ */
+class ChannelWritabilityMonitorTest extends Specification {
+    volatile boolean writable
+    volatile boolean active = true
+    def channel = Stub(Channel) {
+        isWritable() >> { writable }
+        isActive() >> { active }
+        eventLoop() >> Stub(EventLoop) {
+            inEventLoop() >> false
+        }
+    }
+    def monitor = new ChannelWritabilityMonitor(channel, MoreExecutors.directExecutor())
+
+    def 'a blocking writer is parked until the channel is writable'() {
+        given:
+        def parked = new CountDownLatch(1)
+        def done = new CountDownLatch(1)
+        def thread = Thread.start {
+            parked.countDown()
+            monitor.awaitWritable()
+            done.countDown()
+        }
+        parked.await()
+
+        expect:
+        !done.await(200, TimeUnit.MILLISECONDS)
+
+        when:
+        writable = true
+        monitor.writabilityChanged()
+
+        then:
+        done.await(10, TimeUnit.SECONDS)
+
+        cleanup:
+        thread.join()
+    }
+
+    def 'a blocking writer fails once the channel is closed'() {
+        given:
+        def failure = null
+        def thread = Thread.start {
+            try {
+                monitor.awaitWritable()
+            } catch (e) {
+                failure = e
+            }
+        }
+
+        when:
+        active = false
+        monitor.channelInactive()
+        thread.join(10000)
+
+        then:
+        failure instanceof ClosedChannelException
+    }
+
+    def 'a write listener is notified once the channel is writable'() {
+        given:
+        def listener = Mock(WriteListener)
+
+        when:
+        def ready = monitor.isWritable(listener)
+
+        then:
+        !ready
+        0 * listener.onWritePossible()
+
+        when:
+        writable = true
+        monitor.writabilityChanged()
+
+        then:
+        1 * listener.onWritePossible()
+    }
+
+    def 'a write listener is told when the channel closes'() {
+        given:
+        def listener = Mock(WriteListener)
+        monitor.isWritable(listener)
+
+        when:
+        monitor.channelInactive()
+
+        then:
+        1 * listener.onError({ it instanceof ClosedChannelException })
+    }
+}
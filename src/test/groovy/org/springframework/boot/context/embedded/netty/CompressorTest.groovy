@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.buffer.UnpooledByteBufAllocator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.zip.Deflater
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Tests for {@link Compressor}.
+ */
+class CompressorTest extends Specification {
+    static final byte[] BODY = ('My hovercraft is full of eels. ' * 1000).getBytes('UTF-8')
+
+    @Unroll
+    def 'content in a #type buffer compresses to a stream that inflates to the content, with gzip #gzip'() {
+        given:
+        def compressor = new Compressor(gzip, Deflater.DEFAULT_COMPRESSION)
+
+        when:
+        def compressed = compressor.compress(UnpooledByteBufAllocator.DEFAULT, buffer(BODY), true)
+
+        then:
+        inflate(compressed, gzip) == BODY
+
+        cleanup:
+        compressor.end()
+
+        where:
+        gzip  | type     | buffer
+        true  | 'heap'   | { Unpooled.wrappedBuffer(it) }
+        true  | 'direct' | { Unpooled.directBuffer(it.length).writeBytes(it) }
+        false | 'heap'   | { Unpooled.wrappedBuffer(it) }
+        false | 'direct' | { Unpooled.directBuffer(it.length).writeBytes(it) }
+    }
+
+    def 'streamed content is flushed as each piece is compressed'() {
+        given:
+        def compressor = new Compressor(true, Deflater.DEFAULT_COMPRESSION)
+        def out = Unpooled.buffer()
+
+        when:
+        def first = compressor.compress(UnpooledByteBufAllocator.DEFAULT, Unpooled.wrappedBuffer(BODY, 0, 100), false)
+
+        then:
+        first.isReadable()
+
+        when:
+        out.writeBytes(first)
+        out.writeBytes(compressor.compress(UnpooledByteBufAllocator.DEFAULT,
+                Unpooled.directBuffer().writeBytes(BODY, 100, BODY.length - 100), true))
+
+        then:
+        inflate(out, true) == BODY
+
+        cleanup:
+        compressor.end()
+    }
+
+    def 'a reset compressor starts a new stream'() {
+        given:
+        def compressor = new Compressor(true, Deflater.DEFAULT_COMPRESSION)
+        compressor.compress(UnpooledByteBufAllocator.DEFAULT, Unpooled.wrappedBuffer(BODY), true)
+
+        when:
+        compressor.reset()
+        def compressed = compressor.compress(UnpooledByteBufAllocator.DEFAULT, Unpooled.wrappedBuffer(BODY), true)
+
+        then:
+        inflate(compressed, true) == BODY
+
+        cleanup:
+        compressor.end()
+    }
+
+    private static byte[] inflate(ByteBuf compressed, boolean gzip) {
+        def bytes = new byte[compressed.readableBytes()]
+        compressed.readBytes(bytes)
+        def input = new ByteArrayInputStream(bytes)
+        (gzip ? new GZIPInputStream(input) : new InflaterInputStream(input)).bytes
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import spock.lang.Specification
+
+/**
+ * Tests for {@link ContentTypeCache}.
+ */
+class ContentTypeCacheTest extends Specification {
+    def cache = new ContentTypeCache()
+
+    def 'content types are parsed once'() {
+        when:
+        def contentType = cache.get('text/html; charset=UTF-8')
+
+        then:
+        contentType.mediaType == 'text/html'
+        contentType.charset == 'UTF-8'
+        cache.get('text/html; charset=UTF-8').is(contentType)
+    }
+
+    def 'header values are encoded once'() {
+        when:
+        def value = cache.getHeaderValue('text/html', 'UTF-8')
+
+        then:
+        value.toString() == 'text/html; charset=UTF-8'
+        cache.getHeaderValue('text/html', 'UTF-8').is(value)
+        cache.getHeaderValue('text/html', null).toString() == 'text/html'
+    }
+
+    def 'header values are still returned once the cache is full'() {
+        given:
+        1000.times { cache.getHeaderValue("application/x-$it", null) }
+
+        expect:
+        cache.getHeaderValue('application/x-full', 'UTF-8').toString() == 'application/x-full; charset=UTF-8'
+        !cache.getHeaderValue('application/x-full', 'UTF-8').is(cache.getHeaderValue('application/x-full', 'UTF-8'))
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.util.concurrent.EventExecutor
+import io.netty.util.concurrent.EventExecutorGroup
+import io.netty.util.concurrent.ScheduledFuture
+import spock.lang.Specification
+
+import java.text.SimpleDateFormat
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for {@link DateHeaderCache}.
+ */
+class DateHeaderCacheTest extends Specification {
+    def cache = new DateHeaderCache()
+    def executor = Mock(EventExecutor)
+    def group = Stub(EventExecutorGroup) {
+        next() >> executor
+    }
+    def future = Mock(ScheduledFuture)
+
+    def 'the value is the current time as an HTTP date'() {
+        given:
+        def format = new SimpleDateFormat('EEE, dd MMM yyyy HH:mm:ss zzz', Locale.US)
+        format.timeZone = TimeZone.getTimeZone('GMT')
+
+        when:
+        def value = cache.get().toString()
+
+        then:
+        value.endsWith(' GMT')
+        Math.abs(format.parse(value).time - System.currentTimeMillis()) < 2000
+    }
+
+    def 'the value is refreshed every second, starting at the next second'() {
+        given:
+        Runnable refresh = null
+        def before = cache.get()
+
+        when:
+        cache.start(group)
+
+        then:
+        1 * executor.scheduleAtFixedRate(_, { it > 0 && it <= 1000 }, 1000, TimeUnit.MILLISECONDS) >> { args ->
+            refresh = args[0]
+            future
+        }
+
+        when:
+        refresh.run()
+
+        then:
+        !cache.get().is(before)
+    }
+
+    def 'the refresh task is only scheduled once'() {
+        when:
+        cache.start(group)
+        cache.start(group)
+
+        then:
+        1 * executor.scheduleAtFixedRate(*_) >> future
+    }
+
+    def 'stopping cancels the refresh task, and it can be started again'() {
+        given:
+        executor.scheduleAtFixedRate(*_) >> future
+        cache.start(group)
+
+        when:
+        cache.stop()
+        cache.stop()
+
+        then:
+        1 * future.cancel(false)
+
+        when:
+        cache.start(group)
+
+        then:
+        1 * executor.scheduleAtFixedRate(*_) >> future
+    }
+}
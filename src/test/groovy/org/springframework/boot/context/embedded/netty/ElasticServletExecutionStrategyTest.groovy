@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.channel.Channel
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for {@link ElasticServletExecutionStrategy}.
+ */
+class ElasticServletExecutionStrategyTest extends Specification {
+    def strategy = new ElasticServletExecutionStrategy(1, 2, 1, 60, TimeUnit.SECONDS)
+    def release = new CountDownLatch(1)
+
+    def setup() {
+        strategy.start(null)
+    }
+
+    def cleanup() {
+        release.countDown()
+        strategy.stop()
+    }
+
+    def 'the pool grows to the maximum size before requests are queued, and rejects once the queue is full'() {
+        given:
+        def started = new CountDownLatch(2)
+        def blocking = {
+            started.countDown()
+            release.await(10, TimeUnit.SECONDS)
+        }
+
+        when: 'requests on two channels keep both threads busy'
+        strategy.executor(Mock(Channel)).execute(blocking)
+        strategy.executor(Mock(Channel)).execute(blocking)
+
+        then: 'the pool grew past its core size to run them'
+        started.await(10, TimeUnit.SECONDS)
+
+        when: 'a request is queued for a thread'
+        def queuedRan = new CountDownLatch(1)
+        strategy.executor(Mock(Channel)).execute { queuedRan.countDown() }
+
+        then:
+        queuedRan.count == 1
+
+        when: 'the queue is full'
+        strategy.executor(Mock(Channel)).execute {}
+
+        then:
+        thrown(RejectedExecutionException)
+
+        when:
+        release.countDown()
+
+        then:
+        queuedRan.await(10, TimeUnit.SECONDS)
+    }
+
+    def 'an executor can not be created before the strategy is started'() {
+        given:
+        def unstarted = new ElasticServletExecutionStrategy(1, 2)
+
+        when:
+        unstarted.executor(Mock(Channel))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'maxThreads must be at least coreThreads'() {
+        when:
+        new ElasticServletExecutionStrategy(2, 1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.buffer.Unpooled
+import io.netty.channel.ChannelHandlerContext
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.ChannelOutboundHandlerAdapter
+import io.netty.channel.embedded.EmbeddedChannel
+import spock.lang.Specification
+
+/**
+ * Tests for {@link FlushConsolidationHandler}.
+ */
+class FlushConsolidationHandlerTest extends Specification {
+    def flushes = 0
+    def channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+        @Override
+        void flush(ChannelHandlerContext ctx) {
+            flushes++
+            ctx.flush()
+        }
+    }, new FlushConsolidationHandler(), new ChannelInboundHandlerAdapter() {
+        @Override
+        void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ctx.writeAndFlush(msg)
+        }
+    })
+
+    def setup() {
+        // Flushes made while the channel was set up
+        channel.runPendingTasks()
+        flushes = 0
+    }
+
+    def 'flushes during a read are deferred until the read completes'() {
+        when:
+        3.times { channel.pipeline().fireChannelRead(Unpooled.buffer(1).writeByte(it)) }
+
+        then:
+        flushes == 0
+
+        when:
+        channel.pipeline().fireChannelReadComplete()
+
+        then:
+        flushes == 1
+        3.times { assert channel.readOutbound() != null }
+    }
+
+    def 'the channel is flushed once the number of deferred flushes reaches the limit'() {
+        when:
+        255.times { channel.pipeline().fireChannelRead(Unpooled.buffer(1).writeByte(it)) }
+
+        then:
+        flushes == 0
+
+        when:
+        channel.pipeline().fireChannelRead(Unpooled.buffer(1).writeByte(0))
+
+        then:
+        flushes == 1
+    }
+
+    def 'deferred flushes are made when the channel becomes unwritable'() {
+        given:
+        channel.config().setWriteBufferLowWaterMark(1)
+        channel.config().setWriteBufferHighWaterMark(8)
+
+        when:
+        channel.pipeline().fireChannelRead(Unpooled.buffer(6).writerIndex(6))
+
+        then:
+        channel.isWritable()
+        flushes == 0
+
+        when:
+        channel.pipeline().fireChannelRead(Unpooled.buffer(6).writerIndex(6))
+        channel.runPendingTasks()
+
+        then:
+        flushes == 1
+    }
+
+    def 'deferred flushes are made before the channel is closed'() {
+        when:
+        channel.pipeline().fireChannelRead(Unpooled.buffer(1).writeByte(1))
+        channel.close()
+
+        then:
+        flushes == 1
+        channel.readOutbound() != null
+    }
+
+    def 'flushes outside of a read are merged into a task on the event loop'() {
+        when:
+        3.times { channel.writeAndFlush(Unpooled.buffer(1).writeByte(it)) }
+
+        then:
+        flushes == 0
+
+        when:
+        channel.runPendingTasks()
+
+        then:
+        flushes == 1
+    }
+}
@@ -18,12 +18,19 @@
 package org.springframework.boot.context.embedded.netty
 
 import com.google.common.base.Charsets
+import com.google.common.util.concurrent.MoreExecutors
 import io.netty.buffer.Unpooled
 import io.netty.channel.Channel
+import io.netty.channel.ChannelConfig
 import io.netty.handler.codec.http.DefaultHttpContent
+import io.netty.handler.codec.http.DefaultLastHttpContent
 import io.netty.handler.codec.http.LastHttpContent
 import spock.lang.Specification
 
+import javax.servlet.ReadListener
+import javax.servlet.http.HttpServletRequest
+import java.util.concurrent.Executor
+
 /**
  * Tests for {@link HttpContentInputStream}.
  */
@@ -104,4 +111,188 @@ class HttpContentInputStreamTest extends Specification {
         expect:
         stream.available() == 0
     }
+
+    def 'reading is resumed once the queue is drained to the low water mark'() {
+        given:
+        def config = Mock(ChannelConfig)
+        channel.config() >> config
+        stream = new HttpContentInputStream(channel, 8, 16)
+        2.times { stream.addContent(new DefaultHttpContent(Unpooled.buffer(10).writeZero(10))) }
+
+        when:
+        def overHighWaterMark = stream.isOverHighWaterMark()
+        stream.readingSuspended()
+        stream.read(new byte[10], 0, 10)
+
+        then:
+        overHighWaterMark
+        0 * config.setAutoRead(_)
+
+        when:
+        stream.read(new byte[10], 0, 10)
+
+        then:
+        1 * config.setAutoRead(true)
+    }
+
+    def 'a blocking read with no content times out'() {
+        given:
+        channel.isActive() >> true
+        stream = new HttpContentInputStream(channel, MoreExecutors.directExecutor(), 0, 0, 50, 10)
+
+        when:
+        stream.read()
+
+        then:
+        thrown(SocketTimeoutException)
+    }
+
+    def 'a blocking read skips empty content'() {
+        given:
+        stream.addContent(new DefaultHttpContent(Unpooled.EMPTY_BUFFER))
+        stream.addContent(new DefaultLastHttpContent(Unpooled.copiedBuffer("M", Charsets.UTF_8)))
+
+        expect:
+        stream.read() == ('M' as char) as int
+        stream.read() == -1
+    }
+
+    def 'a blocking read waits for content after empty content'() {
+        given:
+        channel.isActive() >> true
+        stream = new HttpContentInputStream(channel, MoreExecutors.directExecutor(), 0, 0, 5000, 10)
+        stream.addContent(new DefaultHttpContent(Unpooled.EMPTY_BUFFER))
+        Thread.start {
+            Thread.sleep(50)
+            stream.addContent(new DefaultHttpContent(Unpooled.copiedBuffer("M", Charsets.UTF_8)))
+        }
+
+        expect:
+        stream.read() == ('M' as char) as int
+    }
+
+    def 'a read listener is not told data is available for empty content'() {
+        given:
+        def listener = Mock(ReadListener)
+        stream.setServletRequest(asyncRequest())
+        stream.setReadListener(listener)
+
+        when:
+        stream.addContent(new DefaultHttpContent(Unpooled.EMPTY_BUFFER))
+
+        then:
+        0 * listener.onDataAvailable()
+        !stream.isReady()
+
+        when:
+        stream.addContent(new DefaultHttpContent(Unpooled.copiedBuffer("M", Charsets.UTF_8)))
+
+        then:
+        1 * listener.onDataAvailable()
+        stream.isReady()
+        stream.read() == ('M' as char) as int
+    }
+
+    def 'unread content is discarded on the servlet executor, and content added after is released'() {
+        given:
+        def tasks = []
+        stream = new HttpContentInputStream(channel, { tasks << it } as Executor, 0, 16, 0, 0)
+        def queued = new DefaultHttpContent(Unpooled.buffer(4).writeZero(4))
+        stream.addContent(queued)
+
+        when:
+        stream.discardRemaining()
+        def late = new DefaultHttpContent(Unpooled.buffer(4).writeZero(4))
+        stream.addContent(late)
+
+        then:
+        late.refCnt() == 0
+        queued.refCnt() == 1
+        tasks.size() == 1
+
+        when:
+        tasks[0].run()
+
+        then:
+        queued.refCnt() == 0
+        stream.read() == -1
+    }
+
+    def 'a read listener can not be set unless the request is async'() {
+        given:
+        stream.setServletRequest(Mock(HttpServletRequest) {
+            isAsyncStarted() >> false
+        })
+
+        when:
+        stream.setReadListener(Mock(ReadListener))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'a read listener is notified when content arrives after the stream was not ready'() {
+        given:
+        def listener = Mock(ReadListener)
+        stream.setServletRequest(asyncRequest())
+        stream.setReadListener(listener)
+        def ready = stream.isReady()
+
+        when:
+        stream.addContent(new DefaultHttpContent(Unpooled.copiedBuffer("My hovercraft is full of eels.", Charsets.UTF_8)))
+
+        then:
+        !ready
+        1 * listener.onDataAvailable()
+    }
+
+    def 'a read listener is notified when all data has been read'() {
+        given:
+        def listener = Mock(ReadListener)
+        stream.setServletRequest(asyncRequest())
+        stream.setReadListener(listener)
+        stream.isReady()
+
+        when:
+        stream.addContent(LastHttpContent.EMPTY_LAST_CONTENT)
+
+        then:
+        1 * listener.onAllDataRead()
+        0 * listener.onDataAvailable()
+    }
+
+    def 'lines are read across content boundaries'() {
+        given:
+        stream.addContent(new DefaultHttpContent(Unpooled.copiedBuffer("My hovercraft is ", Charsets.UTF_8)))
+        stream.addContent(new DefaultHttpContent(Unpooled.copiedBuffer("full of eels.\nI will not buy this record", Charsets.UTF_8)))
+        stream.addContent(new DefaultLastHttpContent(Unpooled.copiedBuffer(", it is scratched.", Charsets.UTF_8)))
+        def b = new byte[64]
+
+        expect:
+        stream.readLine(b, 0, 64) == 31
+        new String(b, 0, 31) == "My hovercraft is full of eels.\n"
+        stream.readLine(b, 0, 64) == 44
+        new String(b, 0, 44) == "I will not buy this record, it is scratched."
+        stream.readLine(b, 0, 64) == -1
+    }
+
+    def 'skip advances across contents, releasing consumed contents'() {
+        given:
+        def first = new DefaultHttpContent(Unpooled.copiedBuffer("My hovercraft is full of eels.", Charsets.UTF_8))
+        stream.addContent(first)
+        stream.addContent(new DefaultLastHttpContent(Unpooled.copiedBuffer(" I will not buy this record.", Charsets.UTF_8)))
+
+        expect:
+        stream.skip(33) == 33
+        first.refCnt() == 0
+        stream.read() == ('w' as char) as int
+        stream.skip(100) == 24
+        stream.read() == -1
+    }
+
+    private HttpServletRequest asyncRequest() {
+        Mock(HttpServletRequest) {
+            isAsyncStarted() >> true
+        }
+    }
 }
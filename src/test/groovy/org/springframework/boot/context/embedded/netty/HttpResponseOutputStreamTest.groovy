@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.util.concurrent.MoreExecutors
+import io.netty.buffer.ByteBuf
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.DefaultFileRegion
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import io.netty.util.ReferenceCountUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.servlet.WriteListener
+import javax.servlet.http.HttpServletRequest
+
+/**
+ * Tests for {@link HttpResponseOutputStream}.
+ */
+class HttpResponseOutputStreamTest extends Specification {
+    def context = new NettyEmbeddedContext('/', Thread.currentThread().getContextClassLoader(), 'ServerInfo')
+    def channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+    def request = Mock(HttpServletRequest)
+    def response = newResponse(true)
+
+    @Unroll
+    def 'a response that fits in the buffer is written as a single FullHttpResponse, with keep alive #keepAlive'() {
+        given:
+        response = newResponse(keepAlive)
+        def body = 'My hovercraft is full of eels.'.getBytes('UTF-8')
+
+        when:
+        response.getOutputStream().write(body)
+        response.getOutputStream().close()
+
+        then:
+        def written = channel.readOutbound()
+        written instanceof FullHttpResponse
+        HttpHeaders.getContentLength(written as FullHttpResponse) == body.length
+        (written as FullHttpResponse).content().readableBytes() == body.length
+        channel.readOutbound() == null
+        channel.isOpen() == keepAlive
+
+        cleanup:
+        written?.release()
+
+        where:
+        keepAlive << [true, false]
+    }
+
+    def 'a response larger than the buffer is written as a response, its content and a last content'() {
+        given:
+        def body = new byte[response.getBufferSize() + 1]
+
+        when:
+        response.getOutputStream().write(body)
+        response.getOutputStream().close()
+
+        then:
+        def written = []
+        def msg
+        while (null != (msg = channel.readOutbound())) {
+            written << msg
+        }
+        written.size() == 3
+        !(written[0] instanceof FullHttpResponse)
+        HttpHeaders.isTransferEncodingChunked(written[0] as HttpResponse)
+        (written[1] as ByteBuf).readableBytes() == body.length
+        written[2] instanceof LastHttpContent
+
+        cleanup:
+        written.each { ReferenceCountUtil.release(it) }
+    }
+
+    @Unroll
+    def 'a write of #length bytes after the stream is closed fails, and writes nothing'() {
+        given:
+        response.getOutputStream().close()
+        def written = readOutbound()
+
+        when:
+        response.getOutputStream().write(new byte[length])
+
+        then:
+        thrown(IllegalStateException)
+        channel.readOutbound() == null
+
+        cleanup:
+        written.each { ReferenceCountUtil.release(it) }
+
+        where:
+        length << [1, 64 * 1024]
+    }
+
+    def 'a file is written as a file region, with a Content-Length'() {
+        given:
+        def file = File.createTempFile('body', '.txt')
+        file.bytes = new byte[100]
+
+        when:
+        response.getOutputStream().writeFile(file)
+
+        then:
+        def written = readOutbound()
+        HttpHeaders.getContentLength(written[0] as HttpResponse) == 100
+        (written[1] as DefaultFileRegion).count() == 100
+        written[2] instanceof LastHttpContent
+
+        cleanup:
+        written.each { ReferenceCountUtil.release(it) }
+        file.delete()
+    }
+
+    def 'a file is copied through the stream once content has been written'() {
+        given:
+        def file = File.createTempFile('body', '.txt')
+        file.bytes = new byte[100]
+        response.getOutputStream().write(new byte[10])
+
+        when:
+        response.getOutputStream().writeFile(file)
+
+        then:
+        def written = readOutbound()
+        written[0] instanceof HttpResponse
+        !written.any { it instanceof DefaultFileRegion }
+        written.sum { it instanceof ByteBuf ? it.readableBytes() : it instanceof HttpContent ? it.content().readableBytes() : 0 } == 110
+
+        cleanup:
+        written.each { ReferenceCountUtil.release(it) }
+        file.delete()
+    }
+
+    def 'a WriteListener can not be set unless the request is async'() {
+        given:
+        request.isAsyncStarted() >> false
+
+        when:
+        response.getOutputStream().setWriteListener(Mock(WriteListener))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'a WriteListener set for an async request is told writing is possible'() {
+        given:
+        request.isAsyncStarted() >> true
+        def listener = Mock(WriteListener)
+
+        when:
+        response.getOutputStream().setWriteListener(listener)
+
+        then:
+        1 * listener.onWritePossible()
+    }
+
+    private List<Object> readOutbound() {
+        def written = []
+        def msg
+        while (null != (msg = channel.readOutbound())) {
+            written << msg
+        }
+        written
+    }
+
+    private NettyHttpServletResponse newResponse(boolean keepAlive) {
+        def nettyResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false)
+        HttpHeaders.setKeepAlive(nettyResponse, keepAlive)
+        def response = new NettyHttpServletResponse(channel.pipeline().firstContext(), context, nettyResponse,
+                new ChannelWritabilityMonitor(channel, MoreExecutors.directExecutor()))
+        response.setServletRequest(request)
+        response
+    }
+}
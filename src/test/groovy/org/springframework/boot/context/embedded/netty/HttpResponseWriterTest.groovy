@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.util.concurrent.MoreExecutors
+import io.netty.buffer.ByteBuf
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.DefaultHttpResponse
+import io.netty.handler.codec.http.HttpContent
+import io.netty.handler.codec.http.HttpResponseStatus
+import io.netty.handler.codec.http.HttpVersion
+import io.netty.util.ReferenceCountUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Tests for {@link HttpResponseWriter}.
+ */
+class HttpResponseWriterTest extends Specification {
+    def channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+    def response
+
+    def setup() {
+        def context = new NettyEmbeddedContext('/', getClass().classLoader, 'Server')
+        def httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false)
+        def writabilityMonitor = new ChannelWritabilityMonitor(channel, MoreExecutors.directExecutor())
+        response = new NettyHttpServletResponse(channel.pipeline().firstContext(), context, httpResponse, writabilityMonitor)
+    }
+
+    @Unroll
+    def 'writes are encoded as #charset'() {
+        given:
+        response.characterEncoding = charset
+        def writer = response.writer
+
+        when:
+        writer.write(text)
+        writer.close()
+
+        then:
+        content() == text.getBytes(charset)
+
+        where:
+        charset      | text
+        'ISO-8859-1' | 'café €'
+        'US-ASCII'   | 'café €'
+        'UTF-8'      | 'café € 😀'
+        'UTF-16BE'   | 'café € 😀'
+    }
+
+    def 'a surrogate pair split across writes is encoded as UTF-8'() {
+        given:
+        response.characterEncoding = 'UTF-8'
+        def writer = response.writer
+
+        when:
+        writer.write('a\ud83d')
+        writer.write('\ude00b')
+        writer.close()
+
+        then:
+        content() == 'a😀b'.getBytes('UTF-8')
+    }
+
+    def 'writes larger than the buffer are encoded as UTF-8'() {
+        given:
+        response.characterEncoding = 'UTF-8'
+        response.bufferSize = 16
+        def writer = response.writer
+        def text = '€' * 100
+
+        when:
+        writer.write(text)
+        writer.close()
+
+        then:
+        content() == text.getBytes('UTF-8')
+    }
+
+    private byte[] content() {
+        def out = new ByteArrayOutputStream()
+        def msg
+        while ((msg = channel.readOutbound()) != null) {
+            def content = msg instanceof HttpContent ? msg.content() : msg instanceof ByteBuf ? msg : null
+            if (null != content) {
+                def bytes = new byte[content.readableBytes()]
+                content.readBytes(bytes)
+                out.write(bytes)
+            }
+            ReferenceCountUtil.release(msg)
+        }
+        out.toByteArray()
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.base.Charsets
+import com.google.common.io.Files
+import com.google.common.util.concurrent.MoreExecutors
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.DefaultFileRegion
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import io.netty.util.ReferenceCountUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.servlet.ServletConfig
+import javax.servlet.http.HttpServletRequest
+
+/**
+ * Tests for {@link NettyDefaultServlet}.
+ */
+class NettyDefaultServletTest extends Specification {
+    static final String BODY = 'My hovercraft is full of eels.'
+
+    def root = Files.createTempDir()
+    def documentRoot = new File(root, 'public')
+    def file = new File(documentRoot, 'hello.txt')
+    def context = new NettyEmbeddedContext('/', Thread.currentThread().getContextClassLoader(), 'ServerInfo')
+    def servlet = new NettyDefaultServlet()
+    def channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+    def request = Mock(HttpServletRequest)
+    def response = new NettyHttpServletResponse(channel.pipeline().firstContext(), context,
+            new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, false),
+            new ChannelWritabilityMonitor(channel, MoreExecutors.directExecutor()))
+
+    def setup() {
+        documentRoot.mkdir()
+        Files.write(BODY, file, Charsets.UTF_8)
+        // Whole seconds, as some file systems don't keep the milliseconds
+        file.setLastModified(1420070400000)
+        Files.write('secret', new File(root, 'secret.txt'), Charsets.UTF_8)
+        context.setDocumentRoot(documentRoot)
+        servlet.init(Mock(ServletConfig) {
+            getServletContext() >> context
+        })
+        request.getRequestURI() >> '/hello.txt'
+        response.setServletRequest(request)
+    }
+
+    def cleanup() {
+        def msg
+        while (null != (msg = channel.readOutbound())) {
+            ReferenceCountUtil.release(msg)
+        }
+        root.deleteDir()
+    }
+
+    def 'a file is written as a file region'() {
+        given:
+        request.getMethod() >> 'GET'
+
+        when:
+        serve()
+
+        then:
+        response.status == 200
+        response.getHeader(HttpHeaders.Names.CONTENT_LENGTH) == String.valueOf(BODY.length())
+        response.getHeader(HttpHeaders.Names.ETAG) == "W/\"${BODY.length()}-${file.lastModified()}\""
+        def written = readOutbound()
+        written[0] instanceof HttpResponse
+        written.find { it instanceof DefaultFileRegion }?.count() == BODY.length()
+    }
+
+    def 'a HEAD request has the headers of a GET, but no content'() {
+        given:
+        request.getMethod() >> 'HEAD'
+
+        when:
+        serve()
+
+        then:
+        response.status == 200
+        response.getHeader(HttpHeaders.Names.CONTENT_LENGTH) == String.valueOf(BODY.length())
+        response.getHeader(HttpHeaders.Names.LAST_MODIFIED) != null
+        def written = readOutbound()
+        !written.any { it instanceof DefaultFileRegion }
+        written.every { !(it instanceof HttpContent) || !(it as HttpContent).content().isReadable() }
+    }
+
+    @Unroll
+    def 'a request with If-None-Match #ifNoneMatch has status #status'() {
+        given:
+        request.getMethod() >> 'GET'
+        request.getHeader(HttpHeaders.Names.IF_NONE_MATCH) >> ifNoneMatch.replace('ETAG', "${BODY.length()}-${file.lastModified()}")
+
+        when:
+        serve()
+
+        then:
+        response.status == status
+        status != 304 || notModifiedWithoutContentLength()
+
+        where:
+        ifNoneMatch            | status
+        '*'                    | 304
+        'W/"ETAG"'             | 304
+        '"ETAG"'               | 304
+        '"other", W/"ETAG"'    | 304
+        '"other"'              | 200
+        'W/"0-0"'              | 200
+    }
+
+    def 'If-None-Match takes precedence over If-Modified-Since'() {
+        given:
+        request.getMethod() >> 'GET'
+        request.getHeader(HttpHeaders.Names.IF_NONE_MATCH) >> '"other"'
+        request.getDateHeader(HttpHeaders.Names.IF_MODIFIED_SINCE) >> file.lastModified()
+
+        when:
+        serve()
+
+        then:
+        response.status == 200
+    }
+
+    @Unroll
+    def 'a request If-Modified-Since #offset ms from the last modified time has status #status'() {
+        given:
+        request.getMethod() >> 'GET'
+        request.getDateHeader(HttpHeaders.Names.IF_MODIFIED_SINCE) >> file.lastModified() + offset
+
+        when:
+        serve()
+
+        then:
+        response.status == status
+        status != 304 || notModifiedWithoutContentLength()
+
+        where:
+        offset | status
+        0      | 304
+        999    | 304
+        1000   | 304
+        -1     | 200
+        -1000  | 200
+    }
+
+    def 'the last modified time is compared at the resolution of a second'() {
+        given:
+        file.setLastModified(1420070400500)
+        request.getMethod() >> 'GET'
+        // HTTP dates drop the milliseconds
+        request.getDateHeader(HttpHeaders.Names.IF_MODIFIED_SINCE) >> 1420070400000
+
+        when:
+        serve()
+
+        then:
+        response.status == 304
+        notModifiedWithoutContentLength()
+    }
+
+    @Unroll
+    def 'the resource path #path is not served'() {
+        expect:
+        context.getResource(path) == null
+        context.getRealPath(path) == null
+
+        where:
+        path << ['/../secret.txt', '/public/../../secret.txt', '/..', '/..\\secret.txt', '/hello.txt\0']
+    }
+
+    def 'a resource path within the document root is served'() {
+        expect:
+        context.getResource('/hello.txt') == file.toURI().toURL()
+        context.getResource('/missing.txt') == null
+    }
+
+    private void serve() {
+        servlet.service(request, response)
+        response.getOutputStream().close()
+    }
+
+    private boolean notModifiedWithoutContentLength() {
+        def written = readOutbound()
+        def response = written[0] as FullHttpResponse
+        def absent = !response.headers().contains(HttpHeaders.Names.CONTENT_LENGTH) && !response.content().isReadable()
+        written.each { ReferenceCountUtil.release(it) }
+        absent
+    }
+
+    private List<Object> readOutbound() {
+        def written = []
+        def msg
+        while (null != (msg = channel.readOutbound())) {
+            written << msg
+        }
+        written
+    }
+}
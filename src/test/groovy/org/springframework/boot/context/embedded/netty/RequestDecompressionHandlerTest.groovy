@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.base.Charsets
+import io.netty.buffer.Unpooled
+import io.netty.channel.ChannelHandlerContext
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import spock.lang.Specification
+
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Tests for {@link RequestDecompressionHandler}.
+ */
+class RequestDecompressionHandlerTest extends Specification {
+    static final String BODY = 'My hovercraft is full of eels. ' * 100
+
+    def channel = new EmbeddedChannel(new RequestDecompressionHandler(4096))
+
+    def 'a gzip body split across contents is inflated'() {
+        given:
+        def compressed = gzip(BODY.getBytes(Charsets.UTF_8))
+
+        when:
+        channel.writeInbound(request('gzip', compressed.length))
+        channel.writeInbound(new DefaultHttpContent(Unpooled.wrappedBuffer(compressed, 0, 5)))
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed, 5, compressed.length - 5)))
+
+        then:
+        def request = channel.readInbound() as HttpRequest
+        !request.headers().contains(HttpHeaders.Names.CONTENT_ENCODING)
+        !request.headers().contains(HttpHeaders.Names.CONTENT_LENGTH)
+        HttpHeaders.isTransferEncodingChunked(request)
+        readBody() == BODY
+    }
+
+    def 'a zlib deflate body is inflated'() {
+        given:
+        def out = new ByteArrayOutputStream()
+        new DeflaterOutputStream(out).withStream { it.write(BODY.getBytes(Charsets.UTF_8)) }
+        def compressed = out.toByteArray()
+
+        when:
+        channel.writeInbound(request('deflate', compressed.length))
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+
+        then:
+        channel.readInbound() instanceof HttpRequest
+        readBody() == BODY
+    }
+
+    def 'a body that inflates past the limit closes the channel'() {
+        given:
+        def compressed = gzip(new byte[8192])
+
+        when:
+        channel.writeInbound(request('gzip', compressed.length))
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+
+        then:
+        !channel.isOpen()
+    }
+
+    def 'a body is not inflated while reading is suspended, and is inflated in order once it resumes'() {
+        given:
+        def compressed = gzip(BODY.getBytes(Charsets.UTF_8))
+        def next = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, '/next')
+
+        when:
+        channel.writeInbound(request('gzip', compressed.length))
+        channel.config().setAutoRead(false)
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+        channel.writeInbound(next)
+
+        then:
+        channel.readInbound() instanceof HttpRequest
+        channel.readInbound() == null
+
+        when:
+        channel.config().setAutoRead(true)
+
+        then:
+        readBody() == BODY
+        channel.readInbound().is(next)
+    }
+
+    def 'compressed content is inflated in bounded steps'() {
+        given:
+        def bytes = new byte[4096]
+        new Random(42).nextBytes(bytes)
+        def compressed = gzip(bytes)
+        def sizes = []
+        channel = new EmbeddedChannel(new RequestDecompressionHandler(8192), new ChannelInboundHandlerAdapter() {
+            @Override
+            void channelRead(ChannelHandlerContext ctx, Object msg) {
+                if (msg instanceof HttpContent) {
+                    sizes << (msg as HttpContent).content().readableBytes()
+                }
+                ctx.fireChannelRead(msg)
+            }
+        })
+
+        when:
+        channel.writeInbound(request('gzip', compressed.length))
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+
+        then:
+        channel.isOpen()
+        sizes.sum() == bytes.length
+        sizes.size() > compressed.length / RequestDecompressionHandler.MAX_INPUT_PER_STEP
+    }
+
+    def 'an invalid body closes the channel'() {
+        when:
+        channel.writeInbound(request('gzip', 4))
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer([1, 2, 3, 4] as byte[])))
+
+        then:
+        !channel.isOpen()
+    }
+
+    def 'a body with an unsupported encoding is passed on unchanged'() {
+        given:
+        def content = new DefaultLastHttpContent(Unpooled.copiedBuffer(BODY, Charsets.UTF_8))
+
+        when:
+        channel.writeInbound(request('br', content.content().readableBytes()))
+        channel.writeInbound(content)
+
+        then:
+        (channel.readInbound() as HttpRequest).headers().get(HttpHeaders.Names.CONTENT_ENCODING) == 'br'
+        channel.readInbound().is(content)
+    }
+
+    private static HttpRequest request(String contentEncoding, int contentLength) {
+        def request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, '/upload')
+        request.headers().set(HttpHeaders.Names.CONTENT_ENCODING, contentEncoding)
+        HttpHeaders.setContentLength(request, contentLength)
+        request
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        def out = new ByteArrayOutputStream()
+        new GZIPOutputStream(out).withStream { it.write(bytes) }
+        out.toByteArray()
+    }
+
+    private String readBody() {
+        def body = new ByteArrayOutputStream()
+        def content
+        while (!((content = channel.readInbound()) instanceof LastHttpContent)) {
+            def buf = (content as HttpContent).content()
+            buf.getBytes(buf.readerIndex(), body, buf.readableBytes())
+            content.release()
+        }
+        new String(body.toByteArray(), Charsets.UTF_8)
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Tests for {@link RequestDispatcherHandler}.
+ */
+class RequestDispatcherHandlerTest extends Specification {
+    def context = new NettyEmbeddedContext('/', Thread.currentThread().getContextClassLoader(), 'ServerInfo')
+    def dispatcher = new RequestDispatcherHandler(context, 0)
+    def tasks = []
+    def queueing = { tasks << it } as Executor
+
+    def 'a request rejected by the servlet executor is responded to with a 503'() {
+        given:
+        def rejecting = { throw new RejectedExecutionException() } as Executor
+        def channel = new EmbeddedChannel(new ServletContentHandler(context, rejecting, HttpContentInputStream.DEFAULT_LOW_WATER_MARK,
+                HttpContentInputStream.DEFAULT_HIGH_WATER_MARK, HttpContentInputStream.DEFAULT_READ_TIMEOUT_MILLIS, 0),
+                dispatcher)
+
+        when:
+        channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, '/'))
+
+        then:
+        def response = channel.readOutbound() as HttpResponse
+        response.status() == HttpResponseStatus.SERVICE_UNAVAILABLE
+        context.getRequestTracker().getInFlight() == 0
+    }
+
+    def 'a request outstanding when its channel closes is no longer in flight'() {
+        given:
+        def channel = newChannel()
+        channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, '/'))
+
+        expect:
+        context.getRequestTracker().getInFlight() == 1
+
+        when:
+        channel.close()
+        channel.runPendingTasks()
+
+        then:
+        context.getRequestTracker().getInFlight() == 0
+
+        when: 'the queued request runs after all'
+        tasks.each { it.run() }
+
+        then:
+        context.getRequestTracker().getInFlight() == 0
+    }
+
+    def 'idle connections are closed, and connections with requests in progress are left open'() {
+        given:
+        def idle = newChannel()
+        def busy = newChannel()
+        busy.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, '/'))
+
+        when:
+        dispatcher.closeIdleConnections()
+        idle.runPendingTasks()
+        busy.runPendingTasks()
+
+        then:
+        !idle.isOpen()
+        busy.isOpen()
+    }
+
+    private EmbeddedChannel newChannel() {
+        new EmbeddedChannel(new ServletContentHandler(context, queueing, HttpContentInputStream.DEFAULT_LOW_WATER_MARK,
+                HttpContentInputStream.DEFAULT_HIGH_WATER_MARK, HttpContentInputStream.DEFAULT_READ_TIMEOUT_MILLIS, 0),
+                dispatcher)
+    }
+}
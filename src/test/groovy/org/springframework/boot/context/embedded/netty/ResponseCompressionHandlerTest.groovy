@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.channel.DefaultFileRegion
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.*
+import io.netty.util.ReferenceCountUtil
+import io.netty.util.concurrent.DefaultThreadFactory
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Tests for {@link ResponseCompressionHandler}.
+ */
+class ResponseCompressionHandlerTest extends Specification {
+    static final byte[] BODY = ('My hovercraft is full of eels. ' * 10).getBytes('UTF-8')
+
+    def channel = new EmbeddedChannel(new ResponseCompressionHandler(new CompressionPolicy(['text/plain'] as Set, 100)))
+
+    def cleanup() {
+        def msg
+        while (null != (msg = channel.readOutbound())) {
+            ReferenceCountUtil.release(msg)
+        }
+    }
+
+    @Unroll
+    def 'the accepted encoding for Accept-Encoding #acceptEncoding is #encoding'() {
+        expect:
+        ResponseCompressionHandler.getAcceptedEncoding(acceptEncoding) == encoding
+
+        where:
+        acceptEncoding          | encoding
+        null                    | null
+        ''                      | null
+        'br'                    | null
+        'gzip'                  | 'gzip'
+        'GZIP'                  | 'gzip'
+        'deflate'               | 'deflate'
+        'deflate, gzip'         | 'gzip'
+        'gzip;q=0, deflate'     | 'deflate'
+        'gzip; q=0.0, deflate'  | 'deflate'
+        'gzip;q=0.5, deflate'   | 'gzip'
+        'gzip;q=0'              | null
+        'gzip;q=invalid'        | 'gzip'
+    }
+
+    @Unroll
+    def 'a full response accepting #acceptEncoding is compressed with #encoding'() {
+        given:
+        request(acceptEncoding)
+
+        when:
+        channel.writeOutbound(fullResponse(BODY))
+
+        then:
+        def response = channel.readOutbound() as FullHttpResponse
+        response.headers().get(HttpHeaders.Names.CONTENT_ENCODING) == encoding
+        response.headers().get(HttpHeaders.Names.VARY) == HttpHeaders.Names.ACCEPT_ENCODING
+        HttpHeaders.getContentLength(response) == response.content().readableBytes()
+        inflate(response.content(), encoding) == BODY
+
+        cleanup:
+        response.release()
+
+        where:
+        acceptEncoding  | encoding
+        'gzip'          | 'gzip'
+        'deflate'       | 'deflate'
+    }
+
+    def 'a full response smaller than the minimum size is not compressed'() {
+        given:
+        request('gzip')
+        def body = Arrays.copyOf(BODY, 99)
+
+        when:
+        channel.writeOutbound(fullResponse(body))
+
+        then:
+        def response = channel.readOutbound() as FullHttpResponse
+        !response.headers().contains(HttpHeaders.Names.CONTENT_ENCODING)
+        response.content().readableBytes() == 99
+
+        cleanup:
+        response.release()
+    }
+
+    def 'a response with a media type that is not compressible is not compressed'() {
+        given:
+        request('gzip')
+        def response = fullResponse(BODY)
+        response.headers().set(HttpHeaders.Names.CONTENT_TYPE, 'image/png')
+
+        when:
+        channel.writeOutbound(response)
+
+        then:
+        !(channel.readOutbound() as HttpResponse).headers().contains(HttpHeaders.Names.CONTENT_ENCODING)
+    }
+
+    def 'a streamed response is compressed as it is written'() {
+        given:
+        request('gzip')
+        def response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_TYPE, 'text/plain; charset=UTF-8')
+
+        when:
+        channel.writeOutbound(response, Unpooled.wrappedBuffer(BODY, 0, 100),
+                new DefaultHttpContent(Unpooled.directBuffer().writeBytes(BODY, 100, 100)),
+                new DefaultLastHttpContent(Unpooled.wrappedBuffer(BODY, 200, BODY.length - 200)))
+
+        then:
+        def written = channel.readOutbound() as HttpResponse
+        written.headers().get(HttpHeaders.Names.CONTENT_ENCODING) == 'gzip'
+        HttpHeaders.isTransferEncodingChunked(written)
+        def compressed = Unpooled.buffer()
+        def content
+        while (!((content = channel.readOutbound()) instanceof LastHttpContent)) {
+            compressed.writeBytes(content instanceof HttpContent ? (content as HttpContent).content() : content as ByteBuf)
+            ReferenceCountUtil.release(content)
+        }
+        compressed.writeBytes((content as HttpContent).content())
+        content.release()
+        inflate(compressed, 'gzip') == BODY
+    }
+
+    def 'a response with a Content-Length and a file region is written as is'() {
+        given:
+        request('gzip')
+        def file = File.createTempFile('body', '.txt')
+        file.bytes = BODY
+        def response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_TYPE, 'text/plain')
+        HttpHeaders.setContentLength(response, BODY.length)
+        def region = new DefaultFileRegion(file, 0, BODY.length)
+
+        when:
+        channel.writeOutbound(response, region, LastHttpContent.EMPTY_LAST_CONTENT)
+
+        then:
+        def written = channel.readOutbound() as HttpResponse
+        !written.headers().contains(HttpHeaders.Names.CONTENT_ENCODING)
+        HttpHeaders.getContentLength(written) == BODY.length
+        channel.readOutbound().is(region)
+
+        cleanup:
+        region.release()
+        file.delete()
+    }
+
+    def 'responses to pipelined requests are compressed with the encoding their own request accepts'() {
+        given:
+        request('gzip')
+        request(null)
+        request('deflate')
+
+        when:
+        3.times { channel.writeOutbound(fullResponse(BODY)) }
+
+        then:
+        ['gzip', null, 'deflate'].every {
+            def response = channel.readOutbound() as FullHttpResponse
+            def encoding = response.headers().get(HttpHeaders.Names.CONTENT_ENCODING)
+            response.release()
+            encoding == it
+        }
+    }
+
+    def 'an informational response does not take the accepted encoding of the final response'() {
+        given:
+        request('gzip')
+
+        when:
+        channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE))
+        channel.writeOutbound(fullResponse(BODY))
+
+        then:
+        (channel.readOutbound() as HttpResponse).status() == HttpResponseStatus.CONTINUE
+        (channel.readOutbound() as HttpResponse).headers().get(HttpHeaders.Names.CONTENT_ENCODING) == 'gzip'
+    }
+
+    private void request(String acceptEncoding) {
+        def request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, '/')
+        if (null != acceptEncoding) {
+            request.headers().set(HttpHeaders.Names.ACCEPT_ENCODING, acceptEncoding)
+        }
+        channel.writeInbound(request)
+        (channel.readInbound() as FullHttpRequest).release()
+    }
+
+    def 'an event loop compressor is ended when its thread terminates'() {
+        given:
+        Compressor compressor = null
+        def thread = new DefaultThreadFactory('compression').newThread {
+            compressor = ResponseCompressionHandler.GZIP_COMPRESSOR.get()
+        }
+
+        thread.start()
+        thread.join()
+
+        when:
+        compressor.deflater.bytesRead
+
+        then:
+        thrown(NullPointerException)
+    }
+
+    private static FullHttpResponse fullResponse(byte[] body) {
+        def response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(body))
+        response.headers().set(HttpHeaders.Names.CONTENT_TYPE, 'text/plain')
+        HttpHeaders.setContentLength(response, body.length)
+        response
+    }
+
+    private static byte[] inflate(ByteBuf compressed, String encoding) {
+        def bytes = new byte[compressed.readableBytes()]
+        compressed.getBytes(compressed.readerIndex(), bytes)
+        def input = new ByteArrayInputStream(bytes)
+        ('gzip' == encoding ? new GZIPInputStream(input) : new InflaterInputStream(input)).bytes
+    }
+}
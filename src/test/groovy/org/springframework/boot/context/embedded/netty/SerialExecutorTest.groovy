@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Tests for {@link SerialExecutor}.
+ */
+class SerialExecutorTest extends Specification {
+    def pool = Executors.newFixedThreadPool(4)
+
+    def cleanup() {
+        pool.shutdown()
+    }
+
+    def 'tasks run one at a time, in submission order, on a multi-threaded pool'() {
+        given:
+        def executor = new SerialExecutor(pool)
+        def order = new CopyOnWriteArrayList()
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        def done = new CountDownLatch(100)
+
+        when:
+        100.times { i ->
+            executor.execute {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                Thread.sleep(0, 1000)
+                order << i
+                running.decrementAndGet()
+                done.countDown()
+            }
+        }
+
+        then:
+        done.await(10, TimeUnit.SECONDS)
+        order == (0..<100).toList()
+        maxRunning.get() == 1
+    }
+
+    def 'executors for different channels run concurrently'() {
+        given:
+        def first = new SerialExecutor(pool)
+        def second = new SerialExecutor(pool)
+        def bothRunning = new CountDownLatch(2)
+
+        when:
+        [first, second].each { executor ->
+            executor.execute {
+                bothRunning.countDown()
+                bothRunning.await(10, TimeUnit.SECONDS)
+            }
+        }
+
+        then:
+        bothRunning.await(10, TimeUnit.SECONDS)
+    }
+
+    def 'a direct task runs on the calling thread when the executor is idle'() {
+        given:
+        def executor = new SerialExecutor(pool)
+        def thread
+
+        when:
+        def executed = executor.tryExecuteDirect { thread = Thread.currentThread() }
+
+        then:
+        executed
+        thread.is(Thread.currentThread())
+        executor.isIdle()
+    }
+
+    def 'a direct task is not executed while another task is running'() {
+        given:
+        def executor = new SerialExecutor(pool)
+        def release = new CountDownLatch(1)
+        executor.execute { release.await(10, TimeUnit.SECONDS) }
+        def ran = false
+
+        when:
+        def executed = executor.tryExecuteDirect { ran = true }
+        release.countDown()
+
+        then:
+        !executed
+        !ran
+    }
+
+    def 'a rejected task is rethrown, and the executor can be used again'() {
+        given:
+        def rejecting = true
+        def executor = new SerialExecutor({ Runnable task ->
+            if (rejecting) {
+                throw new RejectedExecutionException()
+            }
+            task.run()
+        } as Executor)
+        def ran = false
+
+        when:
+        executor.execute {}
+
+        then:
+        thrown(RejectedExecutionException)
+        executor.isIdle()
+
+        when:
+        rejecting = false
+        executor.execute { ran = true }
+
+        then:
+        ran
+    }
+
+    def 'a queued task rejected by the delegate is told, and the tasks behind it still run'() {
+        given:
+        def submitted = []
+        def calls = 0
+        def executor = new SerialExecutor({ Runnable task ->
+            if (++calls == 2) {
+                throw new RejectedExecutionException()
+            }
+            submitted << task
+        } as Executor)
+        def rejection = null
+        def ran = []
+        executor.execute { ran << 1 }
+        executor.execute(new SerialExecutor.RejectableTask() {
+            @Override
+            void run() {
+                ran << 2
+            }
+
+            @Override
+            void rejected(RejectedExecutionException e) {
+                rejection = e
+            }
+        })
+        executor.execute { ran << 3 }
+
+        when:
+        submitted.remove(0).run()
+
+        then:
+        rejection instanceof RejectedExecutionException
+        submitted.size() == 1
+
+        when:
+        submitted.remove(0).run()
+
+        then:
+        ran == [1, 3]
+        executor.isIdle()
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import io.netty.buffer.Unpooled
+import io.netty.handler.codec.http.DefaultHttpContent
+import spock.lang.Specification
+
+/**
+ * Tests for {@link SpscContentQueue}.
+ */
+class SpscContentQueueTest extends Specification {
+    def queue = new SpscContentQueue(4)
+
+    def 'a new queue is empty'() {
+        expect:
+        queue.isEmpty()
+        queue.poll() == null
+    }
+
+    def 'content is polled in order when it overflows into linked rings'() {
+        given:
+        def contents = (0..<10).collect { new DefaultHttpContent(Unpooled.buffer()) }
+
+        when:
+        contents.each { queue.offer(it) }
+
+        then:
+        contents.every { !queue.isEmpty() && queue.poll().is(it) }
+        queue.isEmpty()
+    }
+
+    def 'slots are reused once content is polled'() {
+        given:
+        def contents = (0..<10).collect { new DefaultHttpContent(Unpooled.buffer()) }
+
+        expect:
+        contents.every {
+            queue.offer(it)
+            queue.poll().is(it)
+        }
+        queue.isEmpty()
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.boot.context.embedded.netty
+
+import com.google.common.io.Files
+import spock.lang.Specification
+
+/**
+ * Tests for {@link StaticResourceCache}.
+ */
+class StaticResourceCacheTest extends Specification {
+    def root = Files.createTempDir()
+    def cache = new StaticResourceCache(4096, 1024)
+
+    def cleanup() {
+        cache.invalidateAll()
+        root.deleteDir()
+    }
+
+    def 'a resource is loaded once'() {
+        given:
+        def file = newFile('a.txt', 100)
+
+        when:
+        def cached = get(file)
+
+        then:
+        get(file).is(cached)
+        cached.length == 100
+        cache.missCount == 1
+        cache.hitCount == 1
+    }
+
+    def 'a resource larger than the limit is not cached, and is not loaded again'() {
+        given:
+        def file = newFile('large.txt', 1025)
+
+        expect:
+        get(file) == null
+        get(file) == null
+        cache.missCount == 1
+        cache.hitCount == 1
+    }
+
+    def 'a file larger than the limit is loaded again once it changes'() {
+        given:
+        def file = newFile('large.txt', 1025)
+        get(file)
+
+        when:
+        file.bytes = new byte[100]
+
+        then:
+        get(file).length == 100
+    }
+
+    def 'resources are evicted once their total size exceeds the limit'() {
+        when:
+        def files = (0..<20).collect { newFile("$it", 400) }
+        files.each { get(it) }
+
+        then:
+        cache.evictionCount > 0
+        cache.size * 400 <= 4096
+    }
+
+    def 'an evicted resource is released, while content already written from it is not'() {
+        given:
+        def cached = get(newFile('a.txt', 100))
+        def content = cached.retainedContent(null)
+
+        when:
+        cache.invalidateAll()
+
+        then:
+        cached.retainedContent(null) == null
+        content.refCnt() == 1
+        content.readableBytes() == 100
+
+        cleanup:
+        content.release()
+    }
+
+    def 'a file is reloaded when its size changes'() {
+        given:
+        def file = newFile('a.txt', 100)
+        def cached = get(file)
+        def lastModified = file.lastModified()
+
+        when:
+        file.bytes = new byte[200]
+        file.setLastModified(lastModified)
+
+        then:
+        def reloaded = get(file)
+        !reloaded.is(cached)
+        reloaded.length == 200
+        cached.retainedContent(null) == null
+    }
+
+    def 'a file is reloaded when its modification time changes'() {
+        given:
+        def file = newFile('a.txt', 100)
+        def cached = get(file)
+
+        when:
+        file.setLastModified(file.lastModified() - 10000)
+
+        then:
+        def reloaded = get(file)
+        !reloaded.is(cached)
+        reloaded.lastModified == file.lastModified()
+    }
+
+    def 'a resource that is not a file is assumed not to change'() {
+        given:
+        def file = newFile('a.txt', 100)
+        def cached = cache.get('/a.txt', file.toURI().toURL(), null, null)
+
+        when:
+        file.bytes = new byte[200]
+
+        then:
+        cache.get('/a.txt', file.toURI().toURL(), null, null).is(cached)
+    }
+
+    def 'compressible resources hold compressed variants'() {
+        given:
+        cache.compressionPolicy = new CompressionPolicy(['text/html'] as Set, 256)
+        def file = new File(root, 'a.html')
+        file.text = 'My hovercraft is full of eels. ' * 20
+
+        when:
+        def cached = cache.get('/a.html', file.toURI().toURL(), file, 'text/html')
+
+        then:
+        cached.contentEncoding('gzip') == 'gzip'
+        cached.contentEncoding('deflate') == 'deflate'
+        cached.contentEncoding(null) == null
+        cached.size() > file.length()
+    }
+
+    def 'resources hold compressed variants only as the compression settings allow'() {
+        given:
+        cache.compressionPolicy = policy
+        def file = new File(root, 'a.html')
+        file.text = 'My hovercraft is full of eels. ' * 20
+
+        when:
+        def cached = cache.get('/a.html', file.toURI().toURL(), file, mimeType)
+
+        then:
+        !cached.compressible
+        cached.contentEncoding('gzip') == null
+        cached.size() == file.length()
+
+        where:
+        policy                                                | mimeType
+        null                                                  | 'text/html'
+        new CompressionPolicy(['text/css'] as Set, 256)       | 'text/html'
+        new CompressionPolicy(['text/html'] as Set, 1024)     | 'text/html'
+    }
+
+    private StaticResourceCache.CachedResource get(File file) {
+        cache.get('/' + file.name, file.toURI().toURL(), file, null)
+    }
+
+    private File newFile(String name, int length) {
+        def file = new File(root, name)
+        file.bytes = new byte[length]
+        file
+    }
+}